@@ -0,0 +1,34 @@
+package net.voldrich.graal.async.benchmark;
+
+import net.voldrich.graal.async.api.MockedHttpClient;
+import net.voldrich.graal.async.api.ScriptMockedHttpResponse;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Shared fixtures of the benchmarks.
+ **/
+final class BenchmarkSupport {
+
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * Http client stub answering immediately, so benchmarks measure the executor and not the latency.
+     **/
+    static MockedHttpClient zeroLatencyHttpClient() {
+        MockedHttpClient client = new MockedHttpClient();
+        client.addResponse("/company/info", new ScriptMockedHttpResponse(200, "json/company-info.json", 0));
+        client.addResponse("/company/ceo", new ScriptMockedHttpResponse(200, "json/ceo-list.json", 0));
+        return client;
+    }
+
+    /**
+     * Subscribes the execution count times with given concurrency and waits for all of them.
+     **/
+    static void execute(Mono<?> execution, int count, int concurrency) {
+        Flux.range(0, count)
+                .flatMap(index -> execution, concurrency)
+                .blockLast();
+    }
+}
@@ -0,0 +1,56 @@
+package net.voldrich.graal.async.benchmark;
+
+import net.voldrich.graal.async.script.AsyncScriptExecutor;
+import net.voldrich.graal.async.script.BaseScriptHandler;
+import net.voldrich.graal.async.script.ContextPoolSettings;
+import net.voldrich.graal.async.script.ScriptSchedulers;
+import net.voldrich.graal.async.script.ScriptUtils;
+import org.openjdk.jmh.annotations.*;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one execution of a trivial script, dominated by context creation unless the context is pooled.
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = {
+        "-Xms1g", "-Xmx1g",
+        "-Dorg.slf4j.simpleLogger.log.net.voldrich=warn"
+})
+public class ContextBenchmark {
+
+    @Param({"false", "true"})
+    private boolean pooled;
+
+    private AsyncScriptExecutor executor;
+
+    private Mono<String> execution;
+
+    @Setup
+    public void setUp() {
+        executor = new AsyncScriptExecutor.Builder()
+                .setScriptSchedulers(new ScriptSchedulers(1))
+                .setContextPoolSettings(pooled ? new ContextPoolSettings() : null)
+                .build();
+        execution = executor.executeScript(new BaseScriptHandler(ScriptUtils.parseScript("(function() { return 1; })")) {
+            @Override
+            public Object getContextReuseKey() {
+                return "context-benchmark";
+            }
+        });
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.dispose();
+        executor.getScriptSchedulers().dispose();
+    }
+
+    @Benchmark
+    public String executeTrivialScript() {
+        return execution.block();
+    }
+}
@@ -0,0 +1,66 @@
+package net.voldrich.graal.async.benchmark;
+
+import net.voldrich.graal.async.script.AsyncScriptExecutor;
+import net.voldrich.graal.async.script.ReadOnlyProxies;
+import net.voldrich.graal.async.script.ScriptUtils;
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Value;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Script reading a few fields of a large input, passed as JSON parsed in the context or as read-only proxies.
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = {
+        "-Xms1g", "-Xmx1g",
+        "-Dorg.slf4j.simpleLogger.log.net.voldrich=warn"
+})
+public class InputProxyBenchmark {
+
+    @Param({"10", "1000"})
+    private int items;
+
+    private Context context;
+
+    private Value readFields;
+
+    private Map<String, Object> input;
+
+    private String inputJson;
+
+    @Setup
+    public void setUp() {
+        context = Context.newBuilder(AsyncScriptExecutor.JS_LANGUAGE_TYPE).build();
+        readFields = context.eval(ScriptUtils.parseScript("(function(input) {"
+                + " return input.items[0].name + input.items[input.items.length - 1].nested.value + input.total; })"));
+        List<Map<String, Object>> list = IntStream.range(0, items)
+                .mapToObj(i -> Map.of("id", i, "name", "item " + i, "tags", List.of("a", "b"),
+                        "nested", Map.<String, Object>of("value", i * 1.5, "text", "text " + i)))
+                .collect(Collectors.toList());
+        input = Map.of("total", items, "items", list);
+        inputJson = ScriptUtils.stringifyToString(context, ReadOnlyProxies.wrap(input));
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public String parseJson() {
+        return readFields.execute(ScriptUtils.parseJson(context, inputJson)).asString();
+    }
+
+    @Benchmark
+    public String readOnlyProxy() {
+        return readFields.execute(ReadOnlyProxies.wrap(input)).asString();
+    }
+}
@@ -0,0 +1,63 @@
+package net.voldrich.graal.async.benchmark;
+
+import net.voldrich.graal.async.script.AsyncScriptExecutor;
+import net.voldrich.graal.async.script.ScriptJsonWriter;
+import net.voldrich.graal.async.script.ScriptUtils;
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Value;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization of a script response to JSON, as string by {@code BaseScriptHandler}, as UTF-8 bytes through
+ * the string and directly by {@link ScriptJsonWriter} as in {@code JsonBytesScriptHandler}.
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = {
+        "-Xms1g", "-Xmx1g",
+        "-Dorg.slf4j.simpleLogger.log.net.voldrich=warn"
+})
+public class JsonStringifyBenchmark {
+
+    @Param({"10", "1000"})
+    private int items;
+
+    private Context context;
+
+    private Value response;
+
+    private final ScriptJsonWriter jsonWriter = new ScriptJsonWriter();
+
+    @Setup
+    public void setUp() {
+        context = Context.newBuilder(AsyncScriptExecutor.JS_LANGUAGE_TYPE).build();
+        response = context.eval(ScriptUtils.parseScript("(function(count) {"
+                + " return Array.from({ length: count }, (v, i) => ({ id: i, name: 'item ' + i,"
+                + " tags: ['a', 'b'], active: i % 2 === 0, nested: { value: i * 1.5, text: 'quote \\\" ' + i } }));"
+                + " })")).execute(items);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public String stringify() {
+        return ScriptUtils.stringifyToString(context, response);
+    }
+
+    @Benchmark
+    public byte[] stringifyToUtf8() {
+        return ScriptUtils.stringifyToString(context, response).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] writeJson() {
+        return jsonWriter.writeToBytes(response);
+    }
+}
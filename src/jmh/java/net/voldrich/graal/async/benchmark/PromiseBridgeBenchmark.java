@@ -0,0 +1,74 @@
+package net.voldrich.graal.async.benchmark;
+
+import net.voldrich.graal.async.ScriptTestUtils;
+import net.voldrich.graal.async.script.AsyncScriptExecutor;
+import net.voldrich.graal.async.script.BaseScriptHandler;
+import net.voldrich.graal.async.script.ContextPoolSettings;
+import net.voldrich.graal.async.script.ScriptContext;
+import net.voldrich.graal.async.script.ScriptSchedulers;
+import net.voldrich.graal.async.script.StackCapturePolicy;
+import org.graalvm.polyglot.proxy.ProxyExecutable;
+import org.graalvm.polyglot.proxy.ProxyObject;
+import org.openjdk.jmh.annotations.*;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one awaited host operation. Script awaits 1000 operations completing immediately,
+ * context is pooled so the score is the promise bridge and the stack capture of the selected policy.
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@OperationsPerInvocation(PromiseBridgeBenchmark.AWAITS)
+@Fork(value = 1, jvmArgsAppend = {
+        "-Xms1g", "-Xmx1g",
+        "-Dorg.slf4j.simpleLogger.log.net.voldrich=warn"
+})
+public class PromiseBridgeBenchmark {
+
+    static final int AWAITS = 1000;
+
+    @Param({"NEVER", "SAMPLED", "ALWAYS"})
+    private StackCapturePolicy stackCapturePolicy;
+
+    private AsyncScriptExecutor executor;
+
+    private Mono<String> execution;
+
+    @Setup
+    public void setUp() {
+        executor = new AsyncScriptExecutor.Builder()
+                .setScriptSchedulers(new ScriptSchedulers(1))
+                .setContextPoolSettings(new ContextPoolSettings())
+                .setStackCapturePolicy(stackCapturePolicy)
+                .build();
+        execution = executor.executeScript(new BaseScriptHandler(
+                ScriptTestUtils.sourceFromResource("scripts/test-await-loop.js")) {
+            @Override
+            public void initiateContext(ScriptContext scriptContext) {
+                scriptContext.getIntrinsics().getBindings().putMember("value", ProxyObject.fromMap(Map.of(
+                        "of", (ProxyExecutable) arguments ->
+                                scriptContext.executeAsPromise(Mono.just(arguments[0].asInt()), "value.of"))));
+            }
+
+            @Override
+            public Object getContextReuseKey() {
+                return "promise-bridge-benchmark";
+            }
+        });
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.dispose();
+        executor.getScriptSchedulers().dispose();
+    }
+
+    @Benchmark
+    public String awaitHostOperations() {
+        return execution.block();
+    }
+}
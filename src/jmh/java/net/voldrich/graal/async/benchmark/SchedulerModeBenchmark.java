@@ -0,0 +1,79 @@
+package net.voldrich.graal.async.benchmark;
+
+import net.voldrich.graal.async.api.ScriptTimeout;
+import net.voldrich.graal.async.script.AsyncScriptExecutor;
+import net.voldrich.graal.async.script.BaseScriptHandler;
+import net.voldrich.graal.async.script.ScriptContext;
+import net.voldrich.graal.async.script.ScriptSchedulers;
+import net.voldrich.graal.async.script.ScriptUtils;
+import org.openjdk.jmh.annotations.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Platform and virtual thread script schedulers under a mix of scripts blocking in a host call and async scripts,
+ * both wait 1 ms. Virtual mode requires JDK 21+, run with {@code -jvm <jdk 21 java>} in jmh.args.
+ * Virtual threads use the default number of carriers, one per core like the platform schedulers.
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(SchedulerModeBenchmark.EXECUTIONS)
+@Fork(value = 1, jvmArgsAppend = {
+        "-Xms1g", "-Xmx1g",
+        "-Dorg.slf4j.simpleLogger.log.net.voldrich=warn"
+})
+public class SchedulerModeBenchmark {
+
+    static final int EXECUTIONS = 64;
+
+    static final int VIRTUAL_SCHEDULERS = 64;
+
+    @Param({"platform", "virtual"})
+    private String mode;
+
+    @Param({"0", "25"})
+    private int blockingPercent;
+
+    private AsyncScriptExecutor executor;
+
+    private Mono<String> blockingExecution;
+
+    private Mono<String> asyncExecution;
+
+    @Setup
+    public void setUp() {
+        int processors = Runtime.getRuntime().availableProcessors();
+        executor = new AsyncScriptExecutor.Builder()
+                .setScriptSchedulers("virtual".equals(mode)
+                        ? ScriptSchedulers.virtual(VIRTUAL_SCHEDULERS)
+                        : new ScriptSchedulers(processors))
+                .build();
+        blockingExecution = executor.executeScript(timeoutHandler("blockSleep"));
+        asyncExecution = executor.executeScript(timeoutHandler("ms"));
+    }
+
+    private static BaseScriptHandler timeoutHandler(String method) {
+        return new BaseScriptHandler(ScriptUtils.parseScript(
+                "(async function() { return await timeout." + method + "(1, 'done'); })")) {
+            @Override
+            public void initiateContext(ScriptContext scriptContext) {
+                scriptContext.getIntrinsics().getBindings().putMember("timeout", new ScriptTimeout(scriptContext));
+            }
+        };
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.getScriptSchedulers().dispose();
+    }
+
+    @Benchmark
+    public void executeMixedScripts() {
+        Flux.range(0, EXECUTIONS)
+                .flatMap(index -> index * 100 / EXECUTIONS < blockingPercent ? blockingExecution : asyncExecution, EXECUTIONS)
+                .blockLast();
+    }
+}
@@ -0,0 +1,65 @@
+package net.voldrich.graal.async.benchmark;
+
+import net.voldrich.graal.async.script.AsyncScriptExecutor;
+import net.voldrich.graal.async.script.BaseScriptHandler;
+import net.voldrich.graal.async.script.ScriptSchedulers;
+import net.voldrich.graal.async.script.ScriptUtils;
+import net.voldrich.graal.async.script.TestScriptHandler;
+import org.openjdk.jmh.annotations.*;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of sync and async scripts for different number of script threads and concurrency.
+ * Async script performs two http calls answered immediately by a stub.
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(ScriptExecutionBenchmark.EXECUTIONS)
+@Fork(value = 1, jvmArgsAppend = {
+        "-Xms1g", "-Xmx1g",
+        "-Dorg.slf4j.simpleLogger.log.net.voldrich=warn"
+})
+public class ScriptExecutionBenchmark {
+
+    static final int EXECUTIONS = 256;
+
+    @Param({"sync", "async"})
+    private String script;
+
+    @Param({"1", "2", "4"})
+    private int schedulers;
+
+    @Param({"1", "16", "256"})
+    private int concurrency;
+
+    private AsyncScriptExecutor executor;
+
+    private Mono<String> execution;
+
+    @Setup
+    public void setUp() {
+        executor = new AsyncScriptExecutor.Builder()
+                .setScriptSchedulers(new ScriptSchedulers(schedulers))
+                .build();
+        if ("sync".equals(script)) {
+            execution = executor.executeScript(new BaseScriptHandler(ScriptUtils.parseScript(
+                    "(function() { return { id: 1, name: 'Steve Jobs' }; })")));
+        } else {
+            execution = executor.executeScript(
+                    new TestScriptHandler("scripts/test-http-get.js", BenchmarkSupport.zeroLatencyHttpClient()));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.getScriptSchedulers().dispose();
+    }
+
+    @Benchmark
+    public void executeScripts() {
+        BenchmarkSupport.execute(execution, EXECUTIONS, concurrency);
+    }
+}
@@ -0,0 +1,58 @@
+package net.voldrich.graal.async.script;
+
+import org.graalvm.polyglot.Source;
+import org.graalvm.polyglot.Value;
+
+/**
+ * Handler evaluating a script source, subclasses define the response transformation.
+ **/
+public abstract class AbstractScriptHandler<T> implements ScriptHandler<T> {
+
+    private final Source source;
+
+    /**
+     * Handler evaluating the registered script version selected by the executor,
+     * see {@link AsyncScriptExecutor#executeScript(String, ScriptHandler)}.
+     **/
+    protected AbstractScriptHandler() {
+        this(null);
+    }
+
+    protected AbstractScriptHandler(Source source) {
+        this.source = source;
+    }
+
+    @Override
+    public Source getSource() {
+        return source;
+    }
+
+    @Override
+    public void initiateContext(ScriptContext scriptContext) {
+        // do nothing
+    }
+
+    @Override
+    public Value evaluateScript(ScriptContext scriptContext) {
+        Value response = evaluateSource(scriptContext);
+
+        if (response.canExecute()) {
+            // streamed script function receives the emitter as its argument
+            ScriptEmitter<?> emitter = scriptContext.getEmitter();
+            response = emitter != null ? response.execute(emitter) : response.execute();
+        }
+
+        return response;
+    }
+
+    /**
+     * Evaluates the handler source, or the registered script version when the handler has no source.
+     **/
+    protected Value evaluateSource(ScriptContext scriptContext) {
+        Source scriptSource = source != null ? source : scriptContext.getScriptSource();
+        if (scriptSource == null) {
+            throw new IllegalStateException("Handler has no source and script is not executed by id");
+        }
+        return scriptContext.getContext().eval(scriptSource);
+    }
+}
@@ -0,0 +1,29 @@
+package net.voldrich.graal.async.script;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+
+import java.time.Duration;
+
+/**
+ * Limits of concurrently executed scripts. Executions over the limits are rejected with
+ * {@link ScriptRejectedException}, or wait for a free slot when wait timeout is set.
+ **/
+@Getter
+@Setter
+@Accessors(chain = true)
+public class AdmissionSettings {
+
+    /** Maximum number of active executions across all script schedulers. */
+    private int maxActiveExecutions = Integer.MAX_VALUE;
+
+    /** Maximum number of active executions assigned to one script scheduler. */
+    private int maxActiveExecutionsPerScheduler = Integer.MAX_VALUE;
+
+    /** Maximum number of executions waiting for a free slot, only used when wait timeout is set. */
+    private int maxWaitingExecutions = 0;
+
+    /** How long an execution can wait for a free slot, executions are rejected immediately when null. */
+    private Duration waitTimeout;
+}
@@ -6,11 +6,29 @@ import lombok.experimental.Accessors;
 import lombok.extern.slf4j.Slf4j;
 import org.graalvm.polyglot.Context;
 import org.graalvm.polyglot.Engine;
+import org.graalvm.polyglot.ResourceLimits;
+import org.graalvm.polyglot.Source;
 import org.graalvm.polyglot.Value;
+import org.graalvm.polyglot.proxy.ProxyExecutable;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.publisher.Sinks;
 import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
 
-import java.io.ByteArrayOutputStream;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.IntSupplier;
+import java.util.function.Predicate;
 
 
 @Slf4j
@@ -18,44 +36,292 @@ public class AsyncScriptExecutor {
 
     public static final String JS_LANGUAGE_TYPE = "js";
 
-    private final Engine engine;
+    /** Statement limits count only script sources, same predicate instance is required for all contexts of an engine. */
+    private static final Predicate<Source> LIMITED_SOURCES = source -> !source.isInternal();
+
+    private final EngineShards engineShards;
 
     private final ScriptSchedulers scriptSchedulers;
 
+    private final ContextPoolSettings contextPoolSettings;
+
+    /** Context pool of each script scheduler, empty when pooling is disabled. */
+    private final ConcurrentHashMap<Scheduler, ScriptContextPool> contextPools = new ConcurrentHashMap<>();
+
+    private final Disposable contextPoolEviction;
+
+    /** Deferred teardown of each script scheduler, empty when contexts are closed immediately. */
+    private final ConcurrentHashMap<Scheduler, ContextTeardown> contextTeardowns = new ConcurrentHashMap<>();
+
+    private final TeardownSettings teardownSettings;
+
+    private final ScriptRegistry scriptRegistry;
+
+    private final ExecutionAdmission executionAdmission;
+
+    private final Duration executionTimeout;
+
+    private final long statementLimit;
+
+    private final OperationLimits operationLimits;
+
+    private final ScriptOutputCapture scriptOutputCapture;
+
+    private final StackCapturePolicy stackCapturePolicy;
+
+    private final double stackCaptureSampleRate;
+
+    private final ScriptMetrics scriptMetrics;
+
+    private final OperationCoalescer operationCoalescer = new OperationCoalescer();
+
+    /** Results of deterministic scripts, null when result caching is disabled. */
+    private final ScriptResultCache resultCache;
+
+    /** Warm-up gating readiness, null when no warm-up is configured. */
+    private final ScriptWarmup scriptWarmup;
+
+    /** Contexts not closed yet, including idle pooled ones. */
+    private final Set<ScriptContextImpl> openContexts = ConcurrentHashMap.newKeySet();
+
     private AsyncScriptExecutor(Builder builder) {
-        this.engine = builder.getEngine() != null
-                ? builder.getEngine()
-                : Engine.create();
+        if (builder.getEngineShards() != null) {
+            this.engineShards = builder.getEngineShards();
+        } else {
+            this.engineShards = EngineShards.of(builder.getEngine() != null ? builder.getEngine() : Engine.create());
+        }
         this.scriptSchedulers = builder.getScriptSchedulers() != null
                 ? builder.getScriptSchedulers()
                 : new ScriptSchedulers();
+        this.contextPoolSettings = builder.getContextPoolSettings();
+        this.contextPoolEviction = contextPoolSettings != null
+                ? scheduleContextPoolEviction(contextPoolSettings)
+                : Disposables.disposed();
+        this.teardownSettings = builder.getTeardownSettings();
+        this.scriptRegistry = new ScriptRegistry(this, builder.getMaxCachedScriptVersions());
+        this.executionAdmission = builder.getAdmissionSettings() != null
+                ? new ExecutionAdmission(builder.getAdmissionSettings(), scriptSchedulers)
+                : null;
+        this.executionTimeout = builder.getExecutionTimeout();
+        this.statementLimit = builder.getStatementLimit();
+        this.operationLimits = builder.getOperationLimits();
+        this.scriptOutputCapture = builder.getScriptOutputCapture();
+        this.stackCapturePolicy = builder.getStackCapturePolicy();
+        this.stackCaptureSampleRate = builder.getStackCaptureSampleRate();
+        this.scriptMetrics = builder.getScriptMetrics();
+        this.resultCache = builder.getResultCacheSettings() != null
+                ? new ScriptResultCache(builder.getResultCacheSettings())
+                : null;
+        this.scriptWarmup = builder.getWarmupSettings() != null
+                ? new ScriptWarmup(this, builder.getWarmupSettings())
+                : null;
+        scriptMetrics.bindTo(this);
+        engineShards.bindMetrics(scriptMetrics);
+        scriptSchedulers.addListener(new ScriptSchedulers.Listener() {
+            @Override
+            public void schedulerAdded(ScriptScheduler scriptScheduler) {
+                scriptMetrics.bindScheduler(scriptScheduler);
+            }
+
+            @Override
+            public void schedulerRetired(ScriptScheduler scriptScheduler) {
+                releaseScheduler(scriptScheduler);
+            }
+        });
+        if (scriptWarmup != null && builder.getWarmupSettings().isAutoStart()) {
+            scriptWarmup.start();
+        }
     }
 
     public <T> Mono<T> executeScript(ScriptHandler<T> scriptHandler) {
+        return executeScript((ScriptVersion) null, scriptHandler);
+    }
+
+    /**
+     * Executes current version of the script registered in {@link #getScriptRegistry()}.
+     * The version is resolved on subscription, handler reads it from {@link ScriptContext#getScriptSource()}.
+     **/
+    public <T> Mono<T> executeScript(String scriptId, ScriptHandler<T> scriptHandler) {
+        return Mono.defer(() -> {
+            ScriptVersion scriptVersion = scriptRegistry.getScript(scriptId);
+            if (scriptVersion == null) {
+                return Mono.error(new IllegalArgumentException("Script " + scriptId + " is not registered"));
+            }
+            return executeScript(scriptVersion, scriptHandler);
+        });
+    }
+
+    public <T> Mono<T> executeScript(ScriptVersion scriptVersion, ScriptHandler<T> scriptHandler) {
+        if (resultCache != null && scriptHandler.getResultCacheKey() != null) {
+            return resultCache.get(scriptVersion, scriptHandler, () -> executeUncached(scriptVersion, scriptHandler));
+        }
+        return executeUncached(scriptVersion, scriptHandler);
+    }
+
+    private <T> Mono<T> executeUncached(ScriptVersion scriptVersion, ScriptHandler<T> scriptHandler) {
+        return startOnScheduler(scriptHandler)
+                .flatMap(scriptScheduler -> executeOnScheduler(scriptScheduler, scriptVersion, scriptHandler));
+    }
+
+    /**
+     * Executes the script streaming its items, see {@link ScriptEmitter}. Items are transformed one by one
+     * by {@link ScriptHandler#transformScriptResponse(ScriptContext, Object)} and emitted as requested.
+     * Context stays open until the flux completes or is cancelled, execution timeout applies to the whole stream.
+     **/
+    public <T> Flux<T> executeScriptAsFlux(ScriptHandler<T> scriptHandler) {
+        return executeScriptAsFlux((ScriptVersion) null, scriptHandler);
+    }
+
+    /**
+     * Streams current version of the script registered in {@link #getScriptRegistry()}.
+     **/
+    public <T> Flux<T> executeScriptAsFlux(String scriptId, ScriptHandler<T> scriptHandler) {
+        return Flux.defer(() -> {
+            ScriptVersion scriptVersion = scriptRegistry.getScript(scriptId);
+            if (scriptVersion == null) {
+                return Flux.error(new IllegalArgumentException("Script " + scriptId + " is not registered"));
+            }
+            return executeScriptAsFlux(scriptVersion, scriptHandler);
+        });
+    }
+
+    public <T> Flux<T> executeScriptAsFlux(ScriptVersion scriptVersion, ScriptHandler<T> scriptHandler) {
+        return startOnScheduler(scriptHandler)
+                .flatMapMany(scriptScheduler -> streamOnScheduler(scriptScheduler, scriptVersion, scriptHandler,
+                        context -> evaluateAndStreamScript(context, scriptHandler)));
+    }
+
+    /**
+     * Executes inputs in batches, each batch in one context, see {@link BatchScriptHandler}.
+     * Results are emitted in input order, failure of one input is reported only in its own result.
+     **/
+    public <I, T> Flux<BatchResult<I, T>> executeBatch(Flux<I> inputs, BatchScriptHandler<I, T> scriptHandler) {
+        return executeBatch(inputs, scriptHandler, new BatchSettings());
+    }
+
+    public <I, T> Flux<BatchResult<I, T>> executeBatch(Flux<I> inputs,
+                                                       BatchScriptHandler<I, T> scriptHandler,
+                                                       BatchSettings batchSettings) {
+        // batches are formed only as free batch slots request them, see InputBatcher
+        return InputBatcher.batch(inputs, batchSettings)
+                .flatMapSequential(batch -> startOnScheduler(scriptHandler)
+                                .flatMapMany(scriptScheduler -> streamOnScheduler(scriptScheduler, null, scriptHandler,
+                                        context -> evaluateAndExecuteBatch(context, scriptHandler, batch))),
+                        batchSettings.getMaxConcurrentBatches());
+    }
+
+    /**
+     * Selects scheduler of a new execution, waits for admission in the priority lane of the handler
+     * if admission control is enabled.
+     **/
+    private Mono<ScriptScheduler> startOnScheduler(ScriptHandler<?> scriptHandler) {
+        if (executionAdmission != null) {
+            return executionAdmission.admit(getPriority(scriptHandler));
+        }
+        return Mono.fromSupplier(() -> {
+            ScriptScheduler scriptScheduler = scriptSchedulers.selectScheduler();
+            scriptScheduler.executionStarted();
+            return scriptScheduler;
+        });
+    }
+
+    private <T> Mono<T> executeOnScheduler(ScriptScheduler scriptScheduler,
+                                           ScriptVersion scriptVersion,
+                                           ScriptHandler<T> scriptHandler) {
+        return executeInContext(scriptScheduler, scriptVersion, scriptHandler)
+                .doFinally(signalType -> finishExecution(scriptScheduler));
+    }
+
+    /**
+     * Executes on the given script scheduler bypassing scheduler selection and admission control,
+     * used by the warm-up to run scripts on every script thread.
+     **/
+    <T> Mono<T> executeOnPinnedScheduler(ScriptScheduler scriptScheduler,
+                                         ScriptVersion scriptVersion,
+                                         ScriptHandler<T> scriptHandler) {
         return Mono.defer(() -> {
-            Scheduler scheduler = scriptSchedulers.getNextScheduler();
-            return Mono.using(
-                    () -> createNewContext(scriptHandler, scheduler),
-                    context -> evaluateAndExecuteScript(context, scriptHandler),
-                    this::closeContext
-            ).subscribeOn(scheduler);
+            scriptScheduler.executionStarted();
+            return executeInContext(scriptScheduler, scriptVersion, scriptHandler)
+                    .doFinally(signalType -> scriptScheduler.executionFinished());
         });
     }
 
+    private <T> Mono<T> executeInContext(ScriptScheduler scriptScheduler,
+                                         ScriptVersion scriptVersion,
+                                         ScriptHandler<T> scriptHandler) {
+        Scheduler scheduler = scriptScheduler.getScheduler();
+        return startInLane(scriptScheduler, scriptHandler).then(Mono.using(
+                () -> acquireContext(scriptHandler, scheduler, scriptVersion),
+                context -> evaluateAndExecuteScript(context, scriptHandler),
+                context -> closeContext(context, scriptHandler)
+        ));
+    }
+
+    /**
+     * Execution starts in the priority lane of its handler, all following tasks of the execution run on the
+     * script scheduler ahead of queued starts.
+     **/
+    private Mono<Void> startInLane(ScriptScheduler scriptScheduler, ScriptHandler<?> scriptHandler) {
+        return scriptScheduler.startInLane(getPriority(scriptHandler), scriptHandler.getTenantKey(), scriptMetrics);
+    }
+
+    private static ExecutionPriority getPriority(ScriptHandler<?> scriptHandler) {
+        return scriptHandler.getPriority() != null ? scriptHandler.getPriority() : ExecutionPriority.NORMAL;
+    }
+
+    private <R> Flux<R> streamOnScheduler(ScriptScheduler scriptScheduler,
+                                          ScriptVersion scriptVersion,
+                                          ScriptHandler<?> scriptHandler,
+                                          Function<ScriptContextImpl, Flux<R>> execution) {
+        Scheduler scheduler = scriptScheduler.getScheduler();
+        // only the start waits in the lane, demand is passed to the script thread by the emitter
+        return startInLane(scriptScheduler, scriptHandler).thenMany(Flux.using(
+                () -> acquireContext(scriptHandler, scheduler, scriptVersion),
+                execution,
+                context -> closeContext(context, scriptHandler)
+        )).doFinally(signalType -> finishExecution(scriptScheduler));
+    }
+
+    private void finishExecution(ScriptScheduler scriptScheduler) {
+        if (executionAdmission != null) {
+            executionAdmission.release(scriptScheduler);
+        } else {
+            scriptScheduler.executionFinished();
+        }
+    }
+
     private <T> Mono<T> evaluateAndExecuteScript(ScriptContextImpl scriptContextImpl, ScriptHandler<T> scriptHandler) {
         Mono<Object> functionExecution = Mono.create(sink -> {
             sink.onCancel(scriptContextImpl::forceClose);
             try {
-                Value response = scriptHandler.evaluateScript(scriptContextImpl);
-                sink.success(response);
+                sink.success(evaluateScript(scriptContextImpl, scriptHandler));
             } catch (Exception e) {
                 sink.error(convertError(e, scriptContextImpl));
             }
         });
 
-        return functionExecution
+        Mono<T> execution = functionExecution
                 .flatMap(response -> resolvePromise(response, scriptContextImpl))
-                .map(value -> scriptHandler.transformScriptResponse(scriptContextImpl, value))
+                .map(value -> {
+                    scriptContextImpl.setPhase(ExecutionPhase.TRANSFORMATION);
+                    long transformationStart = System.nanoTime();
+                    boolean transformed = false;
+                    try {
+                        T result = scriptHandler.transformScriptResponse(scriptContextImpl, value);
+                        transformed = true;
+                        return result;
+                    } finally {
+                        recordPhase(ScriptMetrics.Phase.TRANSFORMATION, transformationStart, transformed);
+                    }
+                });
+
+        Sinks.Empty<Void> limitSignal = scriptContextImpl.getLimitSignal();
+        if (limitSignal != null) {
+            // exceeded limit errors the execution even if the script never settles its promise
+            execution = Mono.firstWithSignal(execution, limitSignal.asMono().then(Mono.never()));
+        }
+
+        return execution
                 .name("script-execution")
                 .metrics()
                 .doOnSubscribe(subscription -> log.debug("Evaluating script {}", scriptContextImpl.getTransactionId()))
@@ -65,20 +331,93 @@ public class AsyncScriptExecutor {
                         error.getMessage()));
     }
 
+    private <T> Flux<T> evaluateAndStreamScript(ScriptContextImpl scriptContextImpl, ScriptHandler<T> scriptHandler) {
+        Flux<T> execution = Flux.create(sink -> {
+            ScriptEmitter<T> emitter = new ScriptEmitter<>(scriptContextImpl, scriptHandler, sink);
+            scriptContextImpl.setEmitter(emitter);
+            sink.onCancel(scriptContextImpl::forceClose);
+            Sinks.Empty<Void> limitSignal = scriptContextImpl.getLimitSignal();
+            if (limitSignal != null) {
+                // exceeded limit errors the stream even if the script is paused
+                sink.onDispose(limitSignal.asMono().subscribe(null, sink::error));
+            }
+            try {
+                Value response = evaluateScript(scriptContextImpl, scriptHandler);
+                scriptContextImpl.setPhase(ExecutionPhase.STREAMING);
+                sink.onRequest(emitter::requested);
+                emitter.start(response);
+            } catch (Exception e) {
+                emitter.fail(e);
+            }
+        });
+
+        return execution
+                .name("script-stream")
+                .metrics()
+                .doOnSubscribe(subscription -> log.debug("Streaming script {}", scriptContextImpl.getTransactionId()))
+                .doOnComplete(() -> log.debug("Script stream finished {}", scriptContextImpl.getTransactionId()))
+                .doOnError(error -> log.debug("Script stream failed {}: {}",
+                        scriptContextImpl.getTransactionId(),
+                        error.getMessage()));
+    }
+
+    private <I, T> Flux<BatchResult<I, T>> evaluateAndExecuteBatch(ScriptContextImpl scriptContextImpl,
+                                                                   BatchScriptHandler<I, T> scriptHandler,
+                                                                   List<I> inputs) {
+        Flux<BatchResult<I, T>> execution = Flux.create(sink -> {
+            ScriptBatchExecution<I, T> batch = new ScriptBatchExecution<>(scriptContextImpl, scriptHandler, inputs, sink);
+            sink.onCancel(scriptContextImpl::forceClose);
+            Sinks.Empty<Void> limitSignal = scriptContextImpl.getLimitSignal();
+            if (limitSignal != null) {
+                // inputs not settled before the limit was exceeded fail with the limit error
+                sink.onDispose(limitSignal.asMono().subscribe(null, batch::abort));
+            }
+            Value entry;
+            try {
+                entry = evaluateScript(scriptContextImpl, scriptHandler);
+            } catch (Exception e) {
+                batch.failRemaining(e);
+                return;
+            }
+            scriptContextImpl.setPhase(ExecutionPhase.PROMISE_RESOLUTION);
+            batch.start(entry);
+        });
+
+        return execution
+                .name("script-batch")
+                .metrics()
+                .doOnSubscribe(subscription -> log.debug("Executing batch of {} inputs {}",
+                        inputs.size(), scriptContextImpl.getTransactionId()))
+                .doOnComplete(() -> log.debug("Batch finished {}", scriptContextImpl.getTransactionId()));
+    }
+
+    private Value evaluateScript(ScriptContextImpl scriptContextImpl, ScriptHandler<?> scriptHandler) {
+        scriptContextImpl.setPhase(ExecutionPhase.EVALUATION);
+        long evaluationStart = System.nanoTime();
+        boolean evaluated = false;
+        try {
+            Value response = scriptHandler.evaluateScript(scriptContextImpl);
+            evaluated = true;
+            return response;
+        } finally {
+            recordPhase(ScriptMetrics.Phase.EVALUATION, evaluationStart, evaluated);
+        }
+    }
+
+    private void recordPhase(ScriptMetrics.Phase phase, long startNanos, boolean success) {
+        scriptMetrics.recordPhase(phase, System.nanoTime() - startNanos, success);
+    }
+
     private Mono<Object> resolvePromise(Object response, ScriptContextImpl scriptContextImpl) {
         if (response instanceof Value) {
             Value promise = (Value) response;
-            if (promise.getMetaObject().getMetaSimpleName().equals("Promise")) {
+            if (isThenable(promise)) {
+                scriptContextImpl.setPhase(ExecutionPhase.PROMISE_RESOLUTION);
                 return Mono.create(sink -> {
                     sink.onCancel(scriptContextImpl::forceClose);
                     try {
-                        PromiseConsumer<Object> resolve = new PromiseConsumer<>(sink::success);
-                        PromiseConsumer<Object> reject = new PromiseConsumer<>(error ->
-                                sink.error(convertError(error, scriptContextImpl)));
-
-                        promise
-                                .invokeMember("then", resolve)
-                                .invokeMember("catch", reject);
+                        scriptContextImpl.getIntrinsics().getPromiseBridge()
+                                .executeVoid(promise, new PromiseSettler(sink, scriptContextImpl));
                     } catch (Exception ex) {
                         sink.error(convertError(ex, scriptContextImpl));
                     }
@@ -88,9 +427,45 @@ public class AsyncScriptExecutor {
         return Mono.just(response);
     }
 
-    private ScriptExecutionException convertError(Object error, ScriptContextImpl scriptContextImpl) {
+    static boolean isThenable(Value value) {
+        return value != null && value.hasMembers() && value.canInvokeMember("then");
+    }
+
+    /**
+     * Single callback settling the script execution with the outcome of the promise returned by the script.
+     **/
+    private static final class PromiseSettler implements ProxyExecutable {
+        private final MonoSink<Object> sink;
+        private final ScriptContextImpl scriptContextImpl;
+        private final long resolutionStart = System.nanoTime();
+
+        private PromiseSettler(MonoSink<Object> sink, ScriptContextImpl scriptContextImpl) {
+            this.sink = sink;
+            this.scriptContextImpl = scriptContextImpl;
+        }
+
+        @Override
+        public Object execute(Value... arguments) {
+            boolean resolved = arguments[0].asBoolean();
+            scriptContextImpl.getScriptMetrics().recordPhase(ScriptMetrics.Phase.PROMISE_RESOLUTION,
+                    System.nanoTime() - resolutionStart, resolved);
+            // converted the same way as host method arguments, handlers receive java objects
+            Object value = arguments[1].as(Object.class);
+            if (resolved) {
+                sink.success(value);
+            } else {
+                sink.error(convertError(value, scriptContextImpl));
+            }
+            return null;
+        }
+    }
+
+    static ScriptExecutionException convertError(Object error, ScriptContextImpl scriptContextImpl) {
         try {
-            if (error instanceof ScriptExecutionException) {
+            if (scriptContextImpl.getLimitError() != null) {
+                // context was cancelled because of exceeded limit, original error is the cancellation
+                return scriptContextImpl.getLimitError();
+            } else if (error instanceof ScriptExecutionException) {
                 return (ScriptExecutionException) error;
             } else if (error instanceof Throwable) {
                 // received when error is thrown in host (java) code
@@ -112,46 +487,353 @@ public class AsyncScriptExecutor {
         }
     }
 
+    private ScriptContextImpl acquireContext(ScriptHandler<?> scriptHandler,
+                                             Scheduler scheduler,
+                                             ScriptVersion scriptVersion) {
+        long startNanos = System.nanoTime();
+        Object shardKey = getShardKey(scriptHandler, scriptVersion);
+        EngineShard engineShard = engineShards.route(shardKey);
+        Object reuseKey = contextPoolSettings != null ? scriptHandler.getContextReuseKey() : null;
+        ScriptContextImpl scriptContextImpl = null;
+        if (reuseKey != null) {
+            scriptContextImpl = getContextPool(scheduler).acquire(reuseKey, engineShard);
+            if (scriptContextImpl != null) {
+                log.trace("Reusing pooled context {}", scriptContextImpl.getTransactionId());
+            }
+        }
+        scriptMetrics.recordContextAcquired(scriptContextImpl != null);
+        if (scriptContextImpl == null) {
+            scriptContextImpl = createNewContext(scriptHandler, scheduler, reuseKey, openOnShard(engineShard, shardKey));
+        }
+        scriptContextImpl.setScriptSource(scriptVersion != null ? scriptVersion.getSource() : null);
+        startExecution(scriptContextImpl, scriptHandler, startNanos);
+        return scriptContextImpl;
+    }
+
+    private static Object getShardKey(ScriptHandler<?> scriptHandler, ScriptVersion scriptVersion) {
+        if (scriptHandler.getShardKey() != null) {
+            return scriptHandler.getShardKey();
+        }
+        return scriptVersion != null ? scriptVersion.getScriptId() : null;
+    }
+
+    /**
+     * Registers new context on the routed shard. Engine of the shard can be closed concurrently when the shard
+     * is retired, routing is then repeated as the retired shard is no longer selected.
+     **/
+    private EngineShard openOnShard(EngineShard engineShard, Object shardKey) {
+        while (!engineShard.tryOpenContext()) {
+            engineShard = engineShards.route(shardKey);
+        }
+        return engineShard;
+    }
+
+    private void startExecution(ScriptContextImpl scriptContextImpl, ScriptHandler<?> scriptHandler, long startNanos) {
+        Duration timeout = scriptHandler.getExecutionTimeout() != null
+                ? scriptHandler.getExecutionTimeout()
+                : executionTimeout;
+        boolean limited = timeout != null || getStatementLimit(scriptHandler) > 0;
+        int execution = scriptContextImpl.startExecution(startNanos, limited);
+        scriptContextImpl.setOperationLimits(scriptHandler.getOperationLimits() != null
+                ? scriptHandler.getOperationLimits()
+                : operationLimits);
+        if (timeout != null) {
+            scriptContextImpl.setDeadline(ScriptWatchdog.shared().schedule(startNanos + timeout.toNanos(),
+                    () -> scriptContextImpl.deadlineExceeded(execution, timeout)));
+        }
+    }
+
+    private long getStatementLimit(ScriptHandler<?> scriptHandler) {
+        return scriptHandler.getStatementLimit() > 0 ? scriptHandler.getStatementLimit() : statementLimit;
+    }
+
     private ScriptContextImpl createNewContext(ScriptHandler<?> scriptHandler,
-                                               Scheduler scheduler) {
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+                                               Scheduler scheduler,
+                                               Object reuseKey,
+                                               EngineShard engineShard) {
+        long buildStart = System.nanoTime();
+        ScriptOutputBuffer outputBuffer = scriptOutputCapture.open();
         Context.Builder contextBuilder = Context.newBuilder(JS_LANGUAGE_TYPE)
-                .engine(engine)
-                .out(outputStream)
-                .err(outputStream);
+                .engine(engineShard.getEngine())
+                .out(outputBuffer)
+                .err(outputBuffer);
 
         scriptHandler.initiateContextBuilder(contextBuilder);
 
-        Context context = contextBuilder.build();
-        ScriptContextImpl scriptContextImpl = new ScriptContextImpl(context, scheduler, outputStream);
-        scriptHandler.initiateContext(scriptContextImpl);
+        // limit callback needs the script context, which can only be created with already built context
+        AtomicReference<ScriptContextImpl> limitedContext = new AtomicReference<>();
+        long contextStatementLimit = getStatementLimit(scriptHandler);
+        if (contextStatementLimit > 0) {
+            contextBuilder.resourceLimits(ResourceLimits.newBuilder()
+                    .statementLimit(contextStatementLimit, LIMITED_SOURCES)
+                    .onLimit(event -> statementLimitExceeded(limitedContext.get(), contextStatementLimit))
+                    .build());
+        }
+
+        Context context;
+        try {
+            context = contextBuilder.build();
+        } catch (RuntimeException e) {
+            engineShard.contextClosed();
+            throw e;
+        }
+        ScriptContextImpl scriptContextImpl = new ScriptContextImpl(context, scheduler, outputBuffer, reuseKey);
+        limitedContext.set(scriptContextImpl);
+        scriptContextImpl.setEngineShard(engineShard);
+        scriptContextImpl.setStackCapture(stackCapturePolicy, stackCaptureSampleRate);
+        scriptContextImpl.setScriptMetrics(scriptMetrics);
+        scriptContextImpl.setOperationCoalescer(operationCoalescer);
+        openContexts.add(scriptContextImpl);
+        scriptContextImpl.setCloseListener(closedContext -> {
+            openContexts.remove(closedContext);
+            engineShard.contextClosed();
+        });
+
+        long initiationStart = System.nanoTime();
+        recordPhase(ScriptMetrics.Phase.CONTEXT_BUILD, buildStart, true);
+        boolean initiated = false;
+        try {
+            scriptHandler.initiateContext(scriptContextImpl);
+            if (reuseKey != null) {
+                scriptContextImpl.snapshotGlobals();
+            }
+            initiated = true;
+        } finally {
+            recordPhase(ScriptMetrics.Phase.INITIATION, initiationStart, initiated);
+            if (!initiated) {
+                // context is not handed over to the execution, nobody else would close it
+                scriptContextImpl.close();
+            }
+        }
         return scriptContextImpl;
     }
 
-    private void closeContext(ScriptContextImpl scriptContextImpl) {
+    private void statementLimitExceeded(ScriptContextImpl scriptContextImpl, long limit) {
+        if (scriptContextImpl != null) {
+            scriptContextImpl.recordLimitExceeded("Statement limit of " + limit + " exceeded");
+            // called from within the script, execution is failed once the cancelled script returns
+            scriptContextImpl.getScheduler().schedule(scriptContextImpl::signalLimitExceeded);
+        }
+    }
+
+    private void closeContext(ScriptContextImpl scriptContextImpl, ScriptHandler<?> scriptHandler) {
+        scriptContextImpl.finishExecution();
         // this looks strange, if we would call it immediately then it would result in failed Promise due to context
         // being closed while evaluating the Promise handler.
         // AsyncScriptExecutor.wrapMonoInPromise subscribe call which invokes promise handler basically bubbles to
         // using.close operator, which closes the context which is evaluating the promise belonging to that context.
-        scriptContextImpl.getScheduler().schedule(scriptContextImpl::close);
+        long releaseStart = System.nanoTime();
+        scriptContextImpl.getScheduler().schedule(() -> releaseContext(scriptContextImpl, scriptHandler, releaseStart));
     }
 
+    private void releaseContext(ScriptContextImpl scriptContextImpl, ScriptHandler<?> scriptHandler, long releaseStart) {
+        if (scriptContextImpl.getReuseKey() == null
+                || !getContextPool(scriptContextImpl.getScheduler()).release(scriptContextImpl, scriptHandler)) {
+            if (teardownSettings != null) {
+                getContextTeardown(scriptContextImpl.getScheduler()).close(scriptContextImpl);
+            } else {
+                scriptContextImpl.close();
+            }
+        }
+        recordPhase(ScriptMetrics.Phase.RELEASE, releaseStart, true);
+    }
+
+    private ScriptContextPool getContextPool(Scheduler scheduler) {
+        return contextPools.computeIfAbsent(scheduler, key -> new ScriptContextPool(key, contextPoolSettings));
+    }
+
+    private ContextTeardown getContextTeardown(Scheduler scheduler) {
+        return contextTeardowns.computeIfAbsent(scheduler, key -> new ContextTeardown(key,
+                getQueuedTasks(key), teardownSettings, scriptMetrics));
+    }
+
+    private IntSupplier getQueuedTasks(Scheduler scheduler) {
+        for (ScriptScheduler scriptScheduler : scriptSchedulers.getSchedulers()) {
+            if (scriptScheduler.getScheduler() == scheduler) {
+                return scriptScheduler::getQueuedTasks;
+            }
+        }
+        return () -> 0;
+    }
+
+    /**
+     * Closes pooled and pending contexts of a retired scheduler on its thread, the last tasks before it stops.
+     **/
+    private void releaseScheduler(ScriptScheduler scriptScheduler) {
+        scriptMetrics.unbindScheduler(scriptScheduler);
+        Scheduler scheduler = scriptScheduler.getScheduler();
+        scheduler.schedule(() -> {
+            ScriptContextPool contextPool = contextPools.remove(scheduler);
+            if (contextPool != null) {
+                contextPool.clear();
+            }
+            ContextTeardown contextTeardown = contextTeardowns.remove(scheduler);
+            if (contextTeardown != null) {
+                contextTeardown.closePending();
+            }
+        });
+    }
+
+    private Disposable scheduleContextPoolEviction(ContextPoolSettings settings) {
+        long intervalMs = settings.getEvictionInterval().toMillis();
+        return Schedulers.parallel().schedulePeriodically(
+                () -> contextPools.values().forEach(this::evictIdleContexts),
+                intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void evictIdleContexts(ScriptContextPool contextPool) {
+        try {
+            // contexts are closed on their own thread, so eviction never races with the context being acquired
+            contextPool.getScheduler().schedule(contextPool::evictIdle);
+        } catch (RejectedExecutionException e) {
+            log.trace("Script scheduler disposed, skipping idle context eviction");
+        }
+    }
+
+    /**
+     * Stops idle context eviction and closes all pooled contexts. Script schedulers are not disposed.
+     **/
+    public void dispose() {
+        contextPoolEviction.dispose();
+        contextPools.values().forEach(ScriptContextPool::clear);
+        contextPools.clear();
+        contextTeardowns.values().forEach(ContextTeardown::closeAll);
+    }
+
+    /**
+     * Engine of the default shard, see {@link #getEngineShards()}.
+     **/
     public Engine getEngine() {
-        return engine;
+        return engineShards.getDefaultShard().getEngine();
+    }
+
+    public EngineShards getEngineShards() {
+        return engineShards;
     }
 
     public ScriptSchedulers getScriptSchedulers() {
         return scriptSchedulers;
     }
 
+    /**
+     * Number of contexts not closed yet, including idle pooled contexts.
+     **/
+    public int getOpenContextCount() {
+        return openContexts.size();
+    }
+
+    /**
+     * Contexts released after execution and waiting for the deferred teardown, see {@link TeardownSettings}.
+     **/
+    public int getPendingCloseCount() {
+        int count = 0;
+        for (ContextTeardown contextTeardown : contextTeardowns.values()) {
+            count += contextTeardown.getPendingCount();
+        }
+        return count;
+    }
+
+    /**
+     * Number of async host operations executed as promise and not finished yet, across all open contexts.
+     **/
+    public int getRunningOperationCount() {
+        int count = 0;
+        for (ScriptContextImpl scriptContextImpl : openContexts) {
+            count += scriptContextImpl.getRunningOperationCount();
+        }
+        return count;
+    }
+
+    public ScriptRegistry getScriptRegistry() {
+        return scriptRegistry;
+    }
+
+    /**
+     * Single-flight of host operations executed with an operation key.
+     **/
+    public OperationCoalescer getOperationCoalescer() {
+        return operationCoalescer;
+    }
+
+    /**
+     * Cache of script results, null when result caching is disabled.
+     **/
+    public ScriptResultCache getResultCache() {
+        return resultCache;
+    }
+
+    /**
+     * Warm-up of the executor, null when no warm-up is configured.
+     **/
+    public ScriptWarmup getScriptWarmup() {
+        return scriptWarmup;
+    }
+
+    /**
+     * Whether the configured warm-up finished, always true without warm-up. Intended for readiness health checks.
+     **/
+    public boolean isReady() {
+        return scriptWarmup == null || scriptWarmup.isReady();
+    }
+
+    /**
+     * Admission control counters, null when admission control is disabled.
+     **/
+    public ExecutionAdmission getExecutionAdmission() {
+        return executionAdmission;
+    }
+
     @Getter
     @Setter
     @Accessors(chain = true)
     public static class Builder {
+        /** Engine of the single shard, ignored when engine shards are set. */
         private Engine engine;
 
+        /** Engines scripts are routed to by tenant or script id. Single shard with {@link #engine} when null. */
+        private EngineShards engineShards;
+
         private ScriptSchedulers scriptSchedulers;
 
+        /** Enables pooling of contexts for handlers declaring a context reuse key. Disabled when null. */
+        private ContextPoolSettings contextPoolSettings;
+
+        /** Maximum number of script versions cached by the script registry. */
+        private int maxCachedScriptVersions = 256;
+
+        /** Defers closing of released contexts behind request work on the script thread. Closed immediately when null. */
+        private TeardownSettings teardownSettings;
+
+        /** Limits of concurrently executed scripts. Executions are not limited when null. */
+        private AdmissionSettings admissionSettings;
+
+        /** Default maximum duration of one execution, see {@link ScriptHandler#getExecutionTimeout()}. */
+        private Duration executionTimeout;
+
+        /** Default maximum number of statements executed in one context, zero means unlimited. */
+        private long statementLimit;
+
+        /** Default limits of host operations started by one execution, see {@link ScriptHandler#getOperationLimits()}. */
+        private OperationLimits operationLimits;
+
+        /** How script output is captured, last 64 KiB of each execution are kept by default. */
+        private ScriptOutputCapture scriptOutputCapture = ScriptOutputCapture.bounded(64 * 1024);
+
+        /** When JS stack is captured for async host operations, capturing it costs a JS Error per host call. */
+        private StackCapturePolicy stackCapturePolicy = StackCapturePolicy.ALWAYS;
+
+        /** Ratio of host operations with captured stack when using {@link StackCapturePolicy#SAMPLED}. */
+        private double stackCaptureSampleRate = 0.01;
+
+        /** Enables caching of results of handlers declaring a result cache key. Disabled when null. */
+        private ResultCacheSettings resultCacheSettings;
+
+        /** Scripts executed on every script thread before the executor is ready. No warm-up when null. */
+        private WarmupSettings warmupSettings;
+
+        /** Instrumentation of the execution pipeline, see {@link MicrometerScriptMetrics}. Nothing is recorded by default. */
+        private ScriptMetrics scriptMetrics = ScriptMetrics.NOOP;
+
         public AsyncScriptExecutor build() {
             return new AsyncScriptExecutor(this);
         }
@@ -0,0 +1,23 @@
+package net.voldrich.graal.async.script;
+
+import org.graalvm.polyglot.Source;
+import org.graalvm.polyglot.Value;
+
+/**
+ * Batch handler of a script evaluating to the entry function, e.g. {@code (async function(input) { ... })}.
+ **/
+public class BaseBatchScriptHandler<I> extends BaseScriptHandler implements BatchScriptHandler<I, String> {
+
+    public BaseBatchScriptHandler() {
+        super();
+    }
+
+    public BaseBatchScriptHandler(Source source) {
+        super(source);
+    }
+
+    @Override
+    public Value evaluateScript(ScriptContext scriptContext) {
+        return evaluateSource(scriptContext);
+    }
+}
@@ -1,36 +1,25 @@
 package net.voldrich.graal.async.script;
 
 import org.graalvm.polyglot.Source;
-import org.graalvm.polyglot.Value;
 
 import static net.voldrich.graal.async.script.ScriptUtils.stringifyToString;
 
-public class BaseScriptHandler implements ScriptHandler<String> {
+public class BaseScriptHandler extends AbstractScriptHandler<String> {
 
-    private final Source source;
-
-    public BaseScriptHandler(Source source) {
-        this.source = source;
-    }
-
-    @Override
-    public void initiateContext(ScriptContext scriptContext) {
-        // do nothing
+    /**
+     * Handler evaluating the registered script version selected by the executor,
+     * see {@link AsyncScriptExecutor#executeScript(String, ScriptHandler)}.
+     **/
+    public BaseScriptHandler() {
+        super();
     }
 
-    @Override
-    public Value evaluateScript(ScriptContext scriptContext) {
-        Value response = scriptContext.getContext().eval(source);
-
-        if (response.canExecute()) {
-            response = response.execute();
-        }
-
-        return response;
+    public BaseScriptHandler(Source source) {
+        super(source);
     }
 
     @Override
     public String transformScriptResponse(ScriptContext context, Object value) {
-        return stringifyToString(context.getContext(), value);
+        return stringifyToString(context, value);
     }
 }
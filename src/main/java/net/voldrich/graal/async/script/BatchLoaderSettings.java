@@ -0,0 +1,26 @@
+package net.voldrich.graal.async.script;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+
+import java.time.Duration;
+
+/**
+ * Grouping of keys loaded by {@link ScriptBatchLoader} into one batch call.
+ * A batch is dispatched when it reaches the maximum size or at the end of the script tick (or window) it was started in.
+ **/
+@Getter
+@Setter
+@Accessors(chain = true)
+public class BatchLoaderSettings {
+
+    /** Maximum number of distinct keys loaded by one batch call. */
+    private int maxBatchSize = 100;
+
+    /**
+     * Time the first key of a batch waits for more keys. Zero dispatches the batch once the current script task
+     * (including its microtasks) finishes, so keys loaded by e.g. {@code Promise.all(ids.map(load))} share a batch.
+     **/
+    private Duration batchWindow = Duration.ZERO;
+}
@@ -0,0 +1,34 @@
+package net.voldrich.graal.async.script;
+
+import lombok.Getter;
+
+/**
+ * Result of one input of a batch execution, holds either the transformed response or the error of that input.
+ **/
+@Getter
+public class BatchResult<I, T> {
+
+    private final I input;
+
+    private final T value;
+
+    private final ScriptExecutionException error;
+
+    private BatchResult(I input, T value, ScriptExecutionException error) {
+        this.input = input;
+        this.value = value;
+        this.error = error;
+    }
+
+    static <I, T> BatchResult<I, T> success(I input, T value) {
+        return new BatchResult<>(input, value, null);
+    }
+
+    static <I, T> BatchResult<I, T> failure(I input, ScriptExecutionException error) {
+        return new BatchResult<>(input, null, error);
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+}
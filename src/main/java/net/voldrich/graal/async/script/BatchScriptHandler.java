@@ -0,0 +1,18 @@
+package net.voldrich.graal.async.script;
+
+import org.graalvm.polyglot.Value;
+
+/**
+ * Handles a batch of inputs executed in one context. Context is initiated and the script evaluated once per batch,
+ * {@link #evaluateScript(ScriptContext)} returns the entry function which is then executed for each input.
+ * Response of each input is transformed by {@link #transformScriptResponse(ScriptContext, Object)}.
+ **/
+public interface BatchScriptHandler<I, T> extends ScriptHandler<T> {
+
+    /**
+     * Execute the entry function with one input. If returned value is a promise then that promise is resolved.
+     **/
+    default Value executeEntry(ScriptContext scriptContext, Value entry, I input) {
+        return entry.execute(input);
+    }
+}
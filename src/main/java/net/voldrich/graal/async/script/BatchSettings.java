@@ -0,0 +1,28 @@
+package net.voldrich.graal.async.script;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+
+import java.time.Duration;
+
+/**
+ * Grouping of inputs executed by {@link AsyncScriptExecutor#executeBatch(reactor.core.publisher.Flux, BatchScriptHandler)}.
+ * A batch is closed when it reaches the maximum size or when the window since its first input elapses.
+ * Batches are formed on demand of free batch slots: batch whose window elapsed while all slots are busy keeps
+ * filling up to its maximum size until a slot frees up, inputs are requested only to fill the open batch.
+ **/
+@Getter
+@Setter
+@Accessors(chain = true)
+public class BatchSettings {
+
+    /** Maximum number of inputs executed in one context. */
+    private int maxBatchSize = 100;
+
+    /** Maximum time the first input of a batch waits for more inputs. */
+    private Duration maxBatchWindow = Duration.ofMillis(10);
+
+    /** Maximum number of batches executed concurrently, results are still emitted in input order. */
+    private int maxConcurrentBatches = Runtime.getRuntime().availableProcessors();
+}
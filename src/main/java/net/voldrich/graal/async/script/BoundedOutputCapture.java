@@ -0,0 +1,105 @@
+package net.voldrich.graal.async.script;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Captures output into ring buffers of limited size. Buffers grow on demand up to the limit and are recycled
+ * when their context is closed, so steady load does not allocate new buffers.
+ **/
+class BoundedOutputCapture implements ScriptOutputCapture {
+
+    private static final int INITIAL_SIZE = 256;
+
+    private static final int MAX_RECYCLED_BUFFERS = 256;
+
+    private final int maxBytes;
+
+    private final ArrayBlockingQueue<BoundedOutputBuffer> recycledBuffers = new ArrayBlockingQueue<>(MAX_RECYCLED_BUFFERS);
+
+    BoundedOutputCapture(int maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Output limit has to be positive");
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public ScriptOutputBuffer open() {
+        BoundedOutputBuffer buffer = recycledBuffers.poll();
+        return buffer != null ? buffer : new BoundedOutputBuffer();
+    }
+
+    private final class BoundedOutputBuffer extends ScriptOutputBuffer {
+        private byte[] buffer = new byte[Math.min(INITIAL_SIZE, maxBytes)];
+        /** Total number of bytes written since last reset, the ring holds the last ones. */
+        private long written;
+
+        @Override
+        public synchronized void write(int b) {
+            ensureCapacity(1);
+            buffer[(int) (written % buffer.length)] = (byte) b;
+            written++;
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            if (len >= maxBytes) {
+                // only the tail fits, it overwrites the whole ring
+                if (buffer.length < maxBytes) {
+                    buffer = new byte[maxBytes];
+                }
+                written += len - maxBytes;
+                off += len - maxBytes;
+                len = maxBytes;
+            } else {
+                ensureCapacity(len);
+            }
+            int position = (int) (written % buffer.length);
+            int firstPart = Math.min(len, buffer.length - position);
+            System.arraycopy(b, off, buffer, position, firstPart);
+            System.arraycopy(b, off + firstPart, buffer, 0, len - firstPart);
+            written += len;
+        }
+
+        private void ensureCapacity(int additional) {
+            long required = written + additional;
+            if (required > buffer.length && buffer.length < maxBytes) {
+                // buffer did not wrap yet, so the content starts at index 0
+                int newSize = (int) Math.min(maxBytes, Math.max(required, (long) buffer.length * 2));
+                byte[] grown = new byte[newSize];
+                System.arraycopy(buffer, 0, grown, 0, (int) written);
+                buffer = grown;
+            }
+        }
+
+        @Override
+        public synchronized String getOutput() {
+            if (written <= buffer.length) {
+                return new String(buffer, 0, (int) written, Charset.defaultCharset());
+            }
+            int start = (int) (written % buffer.length);
+            byte[] ordered = new byte[buffer.length];
+            System.arraycopy(buffer, start, ordered, 0, buffer.length - start);
+            System.arraycopy(buffer, 0, ordered, buffer.length - start, start);
+            // skip UTF-8 continuation bytes of a character cut by the truncation
+            int offset = 0;
+            while (offset < ordered.length && (ordered[offset] & 0xC0) == 0x80) {
+                offset++;
+            }
+            return "[... " + (written - buffer.length + offset) + " bytes truncated ...]\n"
+                    + new String(ordered, offset, ordered.length - offset, Charset.defaultCharset());
+        }
+
+        @Override
+        public synchronized void reset() {
+            written = 0;
+        }
+
+        @Override
+        public void release() {
+            reset();
+            recycledBuffers.offer(this);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package net.voldrich.graal.async.script;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+
+import java.time.Duration;
+
+/**
+ * Settings of the context pool kept for each script scheduler.
+ * Pooling is used only for handlers which declare context reuse key, see {@link ScriptHandler#getContextReuseKey()}.
+ **/
+@Getter
+@Setter
+@Accessors(chain = true)
+public class ContextPoolSettings {
+
+    /** Maximum number of idle contexts kept per script scheduler. */
+    private int maxIdleContexts = 16;
+
+    /** Idle contexts not used for this long are closed. */
+    private Duration maxIdleTime = Duration.ofMinutes(1);
+
+    /** How often idle contexts are checked for eviction. */
+    private Duration evictionInterval = Duration.ofSeconds(10);
+
+    /** Ratio of used to max heap above which contexts are not returned to the pool and idle ones are closed. */
+    private double maxHeapUsage = 0.85;
+}
@@ -0,0 +1,107 @@
+package net.voldrich.graal.async.script;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.scheduler.Scheduler;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.IntSupplier;
+
+/**
+ * Deferred and batched closing of contexts of one script thread. Closing a context (polyglot context close,
+ * cancellation of its operations, release of buffers) runs in a task queued behind request work. The task closes
+ * all pending contexts when the thread is idle, otherwise at most {@link TeardownSettings#getMaxClosesPerTask()}
+ * and requeues itself. Contexts over {@link TeardownSettings#getMaxPendingCloses()} are closed immediately.
+ * Accessed only on the script thread except the pending count.
+ **/
+@Slf4j
+class ContextTeardown {
+
+    private final Scheduler scheduler;
+
+    /** Tasks waiting in the script thread queue, closing is deferred while there are any. */
+    private final IntSupplier queuedTasks;
+
+    private final TeardownSettings settings;
+
+    private final ScriptMetrics scriptMetrics;
+
+    private final ArrayDeque<ScriptContextImpl> pending = new ArrayDeque<>();
+
+    private volatile int pendingCount;
+
+    private boolean drainScheduled;
+
+    ContextTeardown(Scheduler scheduler, IntSupplier queuedTasks, TeardownSettings settings, ScriptMetrics scriptMetrics) {
+        this.scheduler = scheduler;
+        this.queuedTasks = queuedTasks;
+        this.settings = settings;
+        this.scriptMetrics = scriptMetrics;
+    }
+
+    void close(ScriptContextImpl scriptContextImpl) {
+        if (pending.size() >= settings.getMaxPendingCloses()) {
+            // backlog is full, teardown cost is paid by the releasing execution
+            closeNow(scriptContextImpl, false);
+            return;
+        }
+        pending.add(scriptContextImpl);
+        pendingCount = pending.size();
+        scheduleDrain();
+    }
+
+    int getPendingCount() {
+        return pendingCount;
+    }
+
+    /**
+     * Closes all pending contexts on the calling script thread, used when the scheduler is retired.
+     **/
+    void closePending() {
+        drain(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Closes all pending contexts, used when the executor is disposed.
+     **/
+    void closeAll() {
+        try {
+            scheduler.schedule(() -> drain(Integer.MAX_VALUE));
+        } catch (RejectedExecutionException e) {
+            log.trace("Script scheduler disposed, skipping close of {} pending contexts", pendingCount);
+        }
+    }
+
+    private void scheduleDrain() {
+        if (!drainScheduled) {
+            drainScheduled = true;
+            scheduler.schedule(() -> {
+                drainScheduled = false;
+                drain(settings.getMaxClosesPerTask());
+            });
+        }
+    }
+
+    private void drain(int budget) {
+        int closed = 0;
+        while (!pending.isEmpty() && (closed < budget || queuedTasks.getAsInt() == 0)) {
+            closeNow(pending.poll(), true);
+            closed++;
+        }
+        pendingCount = pending.size();
+        if (!pending.isEmpty()) {
+            // rest is closed after the request work queued meanwhile
+            scheduleDrain();
+        }
+    }
+
+    private void closeNow(ScriptContextImpl scriptContextImpl, boolean deferred) {
+        long start = System.nanoTime();
+        try {
+            scriptContextImpl.close();
+        } catch (Exception e) {
+            log.warn("Failed to close context {}", scriptContextImpl.getTransactionId(), e);
+        }
+        scriptMetrics.recordContextClosed(System.nanoTime() - start, deferred);
+    }
+}
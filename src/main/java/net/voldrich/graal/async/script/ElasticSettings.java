@@ -0,0 +1,44 @@
+package net.voldrich.graal.async.script;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+
+import java.time.Duration;
+
+/**
+ * Sizing of elastic script schedulers, see {@link ScriptSchedulers#elastic(ElasticSettings)}.
+ * Schedulers are added when executions wait for a script thread and the threads either have spare cores
+ * or spend their time blocked, removed when threads are mostly idle. A decision has to hold for
+ * {@link #stableEvaluations} consecutive evaluations before it is applied.
+ **/
+@Getter
+@Setter
+@Accessors(chain = true)
+public class ElasticSettings {
+
+    private int minSchedulers = 1;
+
+    private int maxSchedulers = Runtime.getRuntime().availableProcessors() * 4;
+
+    /** Number of schedulers created at start, bounded by min and max. */
+    private int initialSchedulers = Runtime.getRuntime().availableProcessors();
+
+    /** How often utilization of the script threads is evaluated. */
+    private Duration evaluationInterval = Duration.ofSeconds(1);
+
+    /** Average wait of an execution for its script thread above which a scheduler is added. */
+    private Duration scaleUpQueueWait = Duration.ofMillis(5);
+
+    /**
+     * Ratio of busy time the threads spend blocked (not on CPU) needed to add schedulers beyond the number of cores.
+     * CPU bound threads do not get faster by adding threads the cores cannot run.
+     **/
+    private double scaleUpBlockedRatio = 0.5;
+
+    /** Ratio of busy time of all threads below which a scheduler is removed. */
+    private double scaleDownUtilization = 0.3;
+
+    /** Number of consecutive evaluations with the same decision before a scheduler is added or removed. */
+    private int stableEvaluations = 3;
+}
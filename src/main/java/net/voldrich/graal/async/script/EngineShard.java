@@ -0,0 +1,106 @@
+package net.voldrich.graal.async.script;
+
+import lombok.extern.slf4j.Slf4j;
+import org.graalvm.polyglot.Engine;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Engine of one shard with its counters, see {@link EngineShards}.
+ * Retired shard receives no new executions, its engine is closed once the last context created on it is closed.
+ **/
+@Slf4j
+public class EngineShard {
+
+    /** Open context count of a closed engine, no context can be opened anymore. */
+    private static final int ENGINE_CLOSED = -1;
+
+    private final String name;
+
+    private final Engine engine;
+
+    private final AtomicInteger openContexts = new AtomicInteger();
+
+    private final LongAdder totalContexts = new LongAdder();
+
+    private volatile boolean retired;
+
+    EngineShard(String name, Engine engine) {
+        this.name = name;
+        this.engine = engine;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Engine getEngine() {
+        return engine;
+    }
+
+    /** Contexts created on the engine and not closed yet, including pooled idle contexts. */
+    public int getOpenContexts() {
+        return Math.max(openContexts.get(), 0);
+    }
+
+    public long getTotalContexts() {
+        return totalContexts.sum();
+    }
+
+    /** Number of sources parsed and cached by the engine, zero once the engine is closed. */
+    public int getCachedSources() {
+        if (openContexts.get() == ENGINE_CLOSED) {
+            return 0;
+        }
+        try {
+            return engine.getCachedSources().size();
+        } catch (IllegalStateException e) {
+            // engine closed concurrently
+            return 0;
+        }
+    }
+
+    public boolean isRetired() {
+        return retired;
+    }
+
+    /**
+     * Registers a context about to be created on the engine. Returns false if the engine is already closed.
+     **/
+    boolean tryOpenContext() {
+        while (true) {
+            int current = openContexts.get();
+            if (current == ENGINE_CLOSED) {
+                return false;
+            }
+            if (openContexts.compareAndSet(current, current + 1)) {
+                totalContexts.increment();
+                return true;
+            }
+        }
+    }
+
+    void contextClosed() {
+        if (openContexts.decrementAndGet() == 0 && retired) {
+            closeIfUnused();
+        }
+    }
+
+    void retire() {
+        retired = true;
+        closeIfUnused();
+    }
+
+    private void closeIfUnused() {
+        if (openContexts.compareAndSet(0, ENGINE_CLOSED)) {
+            log.debug("Closing engine of retired shard {}", name);
+            engine.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name + "[open=" + getOpenContexts() + ", retired=" + retired + "]";
+    }
+}
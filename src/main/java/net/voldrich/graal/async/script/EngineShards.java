@@ -0,0 +1,166 @@
+package net.voldrich.graal.async.script;
+
+import org.graalvm.polyglot.Engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Engines executing the scripts. Each engine has its own code cache and compilation queue, so sharding isolates
+ * tenants or scripts from each other. Executions are routed by a key (tenant or script id) using rendezvous hashing,
+ * so adding or retiring a shard moves only the keys routed to that shard. Executions without a key use the default
+ * (first) shard. Shards can be added and retired at runtime.
+ **/
+public class EngineShards {
+
+    private final Object lock = new Object();
+
+    /** Active shards, replaced on each change so routing reads it without locking. */
+    private volatile List<EngineShard> shards;
+
+    private volatile ScriptMetrics scriptMetrics = ScriptMetrics.NOOP;
+
+    private int nextShardIndex;
+
+    /**
+     * Single shard with a new engine.
+     **/
+    public EngineShards() {
+        this(1);
+    }
+
+    public EngineShards(int numberOfShards) {
+        if (numberOfShards < 1) {
+            throw new IllegalArgumentException("At least one engine shard is required");
+        }
+        List<EngineShard> list = new ArrayList<>(numberOfShards);
+        for (int i = 0; i < numberOfShards; i++) {
+            list.add(new EngineShard(nextShardName(), Engine.create()));
+        }
+        this.shards = Collections.unmodifiableList(list);
+    }
+
+    /**
+     * Single shard using the given engine.
+     **/
+    public static EngineShards of(Engine engine) {
+        EngineShards engineShards = new EngineShards(Collections.emptyList());
+        engineShards.addShard(engineShards.nextShardName(), engine);
+        return engineShards;
+    }
+
+    private EngineShards(List<EngineShard> shards) {
+        this.shards = shards;
+    }
+
+    private String nextShardName() {
+        return "engine-" + nextShardIndex++;
+    }
+
+    /**
+     * Adds a shard with a new engine. Keys routed to it move from other shards.
+     **/
+    public EngineShard addShard() {
+        synchronized (lock) {
+            return addShard(nextShardName(), Engine.create());
+        }
+    }
+
+    public EngineShard addShard(String name, Engine engine) {
+        EngineShard shard = new EngineShard(name, engine);
+        synchronized (lock) {
+            if (getShard(name) != null) {
+                throw new IllegalArgumentException("Engine shard " + name + " already exists");
+            }
+            List<EngineShard> list = new ArrayList<>(shards);
+            list.add(shard);
+            shards = Collections.unmodifiableList(list);
+        }
+        scriptMetrics.bindShard(shard);
+        return shard;
+    }
+
+    /**
+     * Stops routing executions to the shard. Running executions finish on it, its engine is closed once
+     * the last of its contexts is closed. Pooled idle contexts of a retired shard are evicted.
+     * Returns false if there is no such shard, the last shard can not be retired.
+     **/
+    public boolean retireShard(String name) {
+        EngineShard shard;
+        synchronized (lock) {
+            shard = getShard(name);
+            if (shard == null) {
+                return false;
+            }
+            if (shards.size() == 1) {
+                throw new IllegalStateException("Last engine shard can not be retired");
+            }
+            List<EngineShard> list = new ArrayList<>(shards);
+            list.remove(shard);
+            shards = Collections.unmodifiableList(list);
+        }
+        shard.retire();
+        scriptMetrics.unbindShard(shard);
+        return true;
+    }
+
+    /**
+     * Shard executing scripts with the given key, default shard when the key is null.
+     **/
+    public EngineShard route(Object key) {
+        List<EngineShard> current = shards;
+        if (key == null || current.size() == 1) {
+            return current.get(0);
+        }
+        long keyHash = mix(key.hashCode());
+        EngineShard selected = null;
+        long selectedWeight = 0;
+        for (EngineShard shard : current) {
+            long weight = mix(keyHash ^ shard.getName().hashCode());
+            if (selected == null || Long.compareUnsigned(weight, selectedWeight) > 0) {
+                selected = shard;
+                selectedWeight = weight;
+            }
+        }
+        return selected;
+    }
+
+    /** Finalizer of 64-bit murmur3, spreads similar hashes of keys and shard names. */
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    public EngineShard getDefaultShard() {
+        return shards.get(0);
+    }
+
+    public EngineShard getShard(String name) {
+        for (EngineShard shard : shards) {
+            if (shard.getName().equals(name)) {
+                return shard;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Active shards, retired shards are not included.
+     **/
+    public List<EngineShard> getShards() {
+        return shards;
+    }
+
+    /**
+     * Binds metrics of current and future shards, called when the executor is built.
+     **/
+    void bindMetrics(ScriptMetrics scriptMetrics) {
+        this.scriptMetrics = scriptMetrics;
+        shards.forEach(scriptMetrics::bindShard);
+    }
+}
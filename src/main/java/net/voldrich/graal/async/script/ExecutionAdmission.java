@@ -0,0 +1,244 @@
+package net.voldrich.graal.async.script;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Admission control of script executions. Active executions are counted globally and per script scheduler,
+ * executions over the limits either wait in a bounded queue or are rejected immediately.
+ * Waiting executions are admitted by strict priority of their lanes, in arrival order within a lane.
+ * Limits count executions, not the tasks they queue on a scheduler, so the per scheduler limit bounds the task
+ * queue of the scheduler only approximately, an active execution may have several callbacks queued.
+ **/
+@Slf4j
+public class ExecutionAdmission {
+
+    private final AdmissionSettings settings;
+
+    private final ScriptSchedulers scriptSchedulers;
+
+    private final AtomicInteger activeExecutions = new AtomicInteger();
+
+    private final AtomicInteger waitingExecutions = new AtomicInteger();
+
+    private final LongAdder rejectedExecutions = new LongAdder();
+
+    /** Waiters of each priority lane, created for all lanes up front. */
+    private final Map<ExecutionPriority, ConcurrentLinkedQueue<Waiter>> waiters = new EnumMap<>(ExecutionPriority.class);
+
+    ExecutionAdmission(AdmissionSettings settings, ScriptSchedulers scriptSchedulers) {
+        this.settings = settings;
+        this.scriptSchedulers = scriptSchedulers;
+        for (ExecutionPriority priority : ExecutionPriority.values()) {
+            waiters.put(priority, new ConcurrentLinkedQueue<>());
+        }
+    }
+
+    /**
+     * Reserves execution slot on a script scheduler. The slot has to be released by {@link #release(ScriptScheduler)}.
+     **/
+    Mono<ScriptScheduler> admit(ExecutionPriority priority) {
+        return Mono.defer(() -> {
+            // execution does not overtake waiters of its own or higher priority
+            ScriptScheduler scriptScheduler = hasWaitersUpTo(priority) ? null : tryAdmit();
+            if (scriptScheduler != null) {
+                return Mono.just(scriptScheduler);
+            }
+            if (settings.getWaitTimeout() == null) {
+                return reject("Script execution limit reached");
+            }
+            if (waitingExecutions.incrementAndGet() > settings.getMaxWaitingExecutions()) {
+                waitingExecutions.decrementAndGet();
+                return reject("Script execution wait queue is full");
+            }
+            Waiter waiter = new Waiter(priority);
+            // slot admitted to a waiter which was cancelled before the delivery is released by the waiter
+            return Mono.<ScriptScheduler>create(sink -> enqueue(waiter, sink))
+                    .filter(admitted -> waiter.deliver());
+        });
+    }
+
+    void release(ScriptScheduler scriptScheduler) {
+        scriptScheduler.executionFinished();
+        activeExecutions.decrementAndGet();
+        drainWaiters();
+    }
+
+    public int getActiveExecutions() {
+        return activeExecutions.get();
+    }
+
+    public int getWaitingExecutions() {
+        return waitingExecutions.get();
+    }
+
+    public long getRejectedExecutions() {
+        return rejectedExecutions.sum();
+    }
+
+    private ScriptScheduler tryAdmit() {
+        if (!tryIncrement(activeExecutions, settings.getMaxActiveExecutions())) {
+            return null;
+        }
+        ScriptScheduler scriptScheduler = scriptSchedulers.selectScheduler();
+        if (scriptScheduler.tryExecutionStarted(settings.getMaxActiveExecutionsPerScheduler())) {
+            return scriptScheduler;
+        }
+        // selected scheduler is full, fall back to any scheduler with a free slot
+        for (ScriptScheduler candidate : scriptSchedulers.getSchedulers()) {
+            if (candidate.tryExecutionStarted(settings.getMaxActiveExecutionsPerScheduler())) {
+                return candidate;
+            }
+        }
+        activeExecutions.decrementAndGet();
+        return null;
+    }
+
+    private void enqueue(Waiter waiter, MonoSink<ScriptScheduler> sink) {
+        waiter.sink = sink;
+        waiters.get(waiter.priority).add(waiter);
+        waiter.timeout = Schedulers.parallel().schedule(() -> {
+            if (waiter.cancelWaiting()) {
+                rejectedExecutions.increment();
+                sink.error(new ScriptRejectedException(
+                        "Script execution not admitted within " + settings.getWaitTimeout()));
+            }
+        }, settings.getWaitTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        sink.onCancel(waiter::cancel);
+        // slot might have been released before the waiter was queued
+        drainWaiters();
+    }
+
+    private boolean hasWaitersUpTo(ExecutionPriority priority) {
+        for (ExecutionPriority lane : ExecutionPriority.values()) {
+            if (lane.compareTo(priority) > 0) {
+                return false;
+            }
+            if (!waiters.get(lane).isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** First waiter of the highest priority lane with waiters, done waiters are removed on the way. */
+    private Waiter peekWaiter() {
+        for (ConcurrentLinkedQueue<Waiter> lane : waiters.values()) {
+            Waiter waiter;
+            while ((waiter = lane.peek()) != null) {
+                if (!waiter.isDone()) {
+                    return waiter;
+                }
+                lane.remove(waiter);
+            }
+        }
+        return null;
+    }
+
+    private void drainWaiters() {
+        Waiter waiter;
+        while ((waiter = peekWaiter()) != null) {
+            ScriptScheduler scriptScheduler = tryAdmit();
+            if (scriptScheduler == null) {
+                return;
+            }
+            waiters.get(waiter.priority).remove(waiter);
+            if (!waiter.admit(scriptScheduler)) {
+                // waiter timed out or was cancelled in the meantime, slot is offered to the next one
+                scriptScheduler.executionFinished();
+                activeExecutions.decrementAndGet();
+            }
+        }
+    }
+
+    private <T> Mono<T> reject(String message) {
+        rejectedExecutions.increment();
+        log.debug("{}, active executions: {}", message, activeExecutions.get());
+        return Mono.error(new ScriptRejectedException(message));
+    }
+
+    private static boolean tryIncrement(AtomicInteger counter, int limit) {
+        while (true) {
+            int current = counter.get();
+            if (current >= limit) {
+                return false;
+            }
+            if (counter.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private final class Waiter {
+        private static final int WAITING = 0;
+        private static final int ADMITTED = 1;
+        private static final int DELIVERED = 2;
+        private static final int CANCELLED = 3;
+
+        private final ExecutionPriority priority;
+        private final AtomicInteger state = new AtomicInteger(WAITING);
+        private volatile MonoSink<ScriptScheduler> sink;
+        private volatile ScriptScheduler scriptScheduler;
+        private volatile Disposable timeout;
+
+        private Waiter(ExecutionPriority priority) {
+            this.priority = priority;
+        }
+
+        private boolean isDone() {
+            return state.get() != WAITING;
+        }
+
+        private boolean admit(ScriptScheduler scriptScheduler) {
+            this.scriptScheduler = scriptScheduler;
+            if (!state.compareAndSet(WAITING, ADMITTED)) {
+                return false;
+            }
+            waitingExecutions.decrementAndGet();
+            disposeTimeout();
+            sink.success(scriptScheduler);
+            return true;
+        }
+
+        /**
+         * Hands the admitted slot over to the execution, fails when the waiter was cancelled after the admission.
+         **/
+        private boolean deliver() {
+            return state.compareAndSet(ADMITTED, DELIVERED);
+        }
+
+        private boolean cancelWaiting() {
+            if (!state.compareAndSet(WAITING, CANCELLED)) {
+                return false;
+            }
+            waitingExecutions.decrementAndGet();
+            waiters.get(priority).remove(this);
+            disposeTimeout();
+            return true;
+        }
+
+        private void cancel() {
+            if (!cancelWaiting() && state.compareAndSet(ADMITTED, CANCELLED)) {
+                // admitted scheduler was dropped by the cancelled subscriber, execution never starts
+                release(scriptScheduler);
+            }
+        }
+
+        private void disposeTimeout() {
+            Disposable timeoutTask = this.timeout;
+            if (timeoutTask != null) {
+                timeoutTask.dispose();
+            }
+        }
+    }
+}
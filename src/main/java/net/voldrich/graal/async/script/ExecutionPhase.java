@@ -0,0 +1,17 @@
+package net.voldrich.graal.async.script;
+
+/**
+ * Phase of a script execution, reported when the execution exceeds its limits.
+ **/
+public enum ExecutionPhase {
+    /** Context is being built and initiated by the handler. */
+    INITIALIZATION,
+    /** Script is being evaluated by the handler. */
+    EVALUATION,
+    /** Promise returned by the script is being resolved, script waits for async operations. */
+    PROMISE_RESOLUTION,
+    /** Script response is being transformed by the handler. */
+    TRANSFORMATION,
+    /** Streamed script emits items, script waits for async operations or for the subscriber demand. */
+    STREAMING
+}
@@ -0,0 +1,13 @@
+package net.voldrich.graal.async.script;
+
+/**
+ * Priority lane of an execution on its script thread, see {@link ScriptHandler#getPriority()}.
+ * Lanes are drained by strict priority, executions of tenants within a lane by weighted fair queuing.
+ **/
+public enum ExecutionPriority {
+    /** Latency sensitive requests, started before any other queued execution. */
+    INTERACTIVE,
+    NORMAL,
+    /** Background and bulk jobs, started only when no other execution waits. */
+    BATCH
+}
@@ -0,0 +1,174 @@
+package net.voldrich.graal.async.script;
+
+import org.reactivestreams.Subscription;
+import reactor.core.Disposable;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Groups inputs into batches by size or time window like {@link Flux#bufferTimeout(int, java.time.Duration)},
+ * but honours demand. Inputs are requested only to fill the open batch, a new batch is opened only when batches
+ * are requested. Batch whose window elapsed without demand is not dropped or overflowed, it keeps filling up to
+ * its maximum size and is emitted once requested, so at most one batch of inputs is held.
+ **/
+final class InputBatcher<I> extends BaseSubscriber<I> {
+
+    private final FluxSink<List<I>> sink;
+    private final int maxBatchSize;
+    private final long windowNanos;
+
+    private final AtomicInteger wip = new AtomicInteger();
+
+    /** State below is guarded by this. */
+    private List<I> batch;
+    private boolean windowElapsed;
+    private Disposable window;
+    private long requestedBatches;
+    private long requestedInputs;
+    private boolean done;
+    private Throwable error;
+
+    private InputBatcher(FluxSink<List<I>> sink, BatchSettings batchSettings) {
+        this.sink = sink;
+        this.maxBatchSize = batchSettings.getMaxBatchSize();
+        this.windowNanos = batchSettings.getMaxBatchWindow().toNanos();
+    }
+
+    static <I> Flux<List<I>> batch(Flux<I> inputs, BatchSettings batchSettings) {
+        return Flux.create(sink -> {
+            InputBatcher<I> batcher = new InputBatcher<>(sink, batchSettings);
+            sink.onDispose(batcher::cancelAll);
+            inputs.subscribe(batcher);
+            sink.onRequest(batcher::requestBatches);
+        });
+    }
+
+    @Override
+    protected void hookOnSubscribe(Subscription subscription) {
+        // inputs are requested by drain once batches are requested
+    }
+
+    @Override
+    protected void hookOnNext(I input) {
+        synchronized (this) {
+            requestedInputs--;
+            if (batch == null) {
+                List<I> opened = new ArrayList<>(maxBatchSize);
+                batch = opened;
+                window = Schedulers.parallel().schedule(() -> closeWindow(opened), windowNanos, TimeUnit.NANOSECONDS);
+            }
+            batch.add(input);
+        }
+        drain();
+    }
+
+    @Override
+    protected void hookOnComplete() {
+        synchronized (this) {
+            done = true;
+        }
+        drain();
+    }
+
+    @Override
+    protected void hookOnError(Throwable throwable) {
+        synchronized (this) {
+            done = true;
+            error = throwable;
+        }
+        drain();
+    }
+
+    private void requestBatches(long batches) {
+        synchronized (this) {
+            requestedBatches = Math.min(Long.MAX_VALUE - batches, requestedBatches) + batches;
+        }
+        drain();
+    }
+
+    private void closeWindow(List<I> opened) {
+        synchronized (this) {
+            // window of an already emitted batch can elapse while it is being disposed
+            if (batch == opened) {
+                windowElapsed = true;
+            }
+        }
+        drain();
+    }
+
+    private void cancelAll() {
+        cancel();
+        synchronized (this) {
+            if (window != null) {
+                window.dispose();
+            }
+            batch = null;
+        }
+    }
+
+    /**
+     * Emits the closed batch if requested and requests inputs of the open batch. Only one thread drains at a time,
+     * signals arriving meanwhile are handled by another pass of the draining thread.
+     **/
+    private void drain() {
+        if (wip.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        while (true) {
+            List<I> closed = null;
+            long inputs = 0;
+            boolean finished = false;
+            Throwable failure = null;
+            synchronized (this) {
+                if (error != null) {
+                    finished = true;
+                    failure = error;
+                    batch = null;
+                } else if (batch != null && requestedBatches > 0
+                        && (batch.size() >= maxBatchSize || windowElapsed || done)) {
+                    closed = batch;
+                    batch = null;
+                    windowElapsed = false;
+                    window.dispose();
+                    requestedBatches--;
+                } else if (done && batch == null) {
+                    finished = true;
+                } else if (!done && requestedInputs == 0 && (batch != null || requestedBatches > 0)) {
+                    int open = batch != null ? batch.size() : 0;
+                    if (open < maxBatchSize) {
+                        inputs = maxBatchSize - open;
+                        requestedInputs = inputs;
+                    }
+                }
+            }
+            if (finished) {
+                if (failure != null) {
+                    sink.error(failure);
+                } else {
+                    sink.complete();
+                }
+                return;
+            }
+            if (closed != null) {
+                sink.next(closed);
+                continue;
+            }
+            if (inputs > 0) {
+                request(inputs);
+                continue;
+            }
+            missed = wip.addAndGet(-missed);
+            if (missed == 0) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package net.voldrich.graal.async.script;
+
+import org.graalvm.polyglot.Source;
+
+import static net.voldrich.graal.async.script.ScriptUtils.stringifyToBytes;
+
+/**
+ * Handler transforming the script response directly to UTF-8 JSON bytes, see {@link ScriptJsonWriter}.
+ * Avoids the intermediate string of {@link BaseScriptHandler} for large responses.
+ **/
+public class JsonBytesScriptHandler extends AbstractScriptHandler<byte[]> {
+
+    public JsonBytesScriptHandler() {
+        super();
+    }
+
+    public JsonBytesScriptHandler(Source source) {
+        super(source);
+    }
+
+    @Override
+    public byte[] transformScriptResponse(ScriptContext context, Object value) {
+        return stringifyToBytes(context, value);
+    }
+}
@@ -0,0 +1,33 @@
+package net.voldrich.graal.async.script;
+
+import java.util.function.Supplier;
+
+/**
+ * Output of one execution read on demand. The output is copied only if it is read, or frozen when the execution
+ * ends while someone (usually an exception) still holds this instance, so recycled buffer is never read.
+ **/
+final class LazyScriptOutput implements Supplier<String> {
+
+    private ScriptOutputBuffer buffer;
+
+    private String output;
+
+    LazyScriptOutput(ScriptOutputBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    @Override
+    public synchronized String get() {
+        if (output != null) {
+            return output;
+        }
+        return buffer.getOutput();
+    }
+
+    synchronized void freeze() {
+        if (output == null) {
+            output = buffer.getOutput();
+            buffer = null;
+        }
+    }
+}
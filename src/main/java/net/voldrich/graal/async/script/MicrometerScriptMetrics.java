@@ -0,0 +1,225 @@
+package net.voldrich.graal.async.script;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Micrometer metrics of the execution pipeline. Micrometer is an optional dependency,
+ * it is needed on the classpath only when this class is used.
+ * All tags have low cardinality: phase, outcome, pooled, lane, scheduler, engine shard name and operation limit.
+ **/
+public class MicrometerScriptMetrics implements ScriptMetrics {
+
+    private final MeterRegistry registry;
+
+    private final String prefix;
+
+    /** Timers indexed by phase ordinal, successful and failed outcome. */
+    private final Timer[] successTimers;
+    private final Timer[] failureTimers;
+
+    private final Counter pooledContexts;
+    private final Counter newContexts;
+
+    /** Queue wait timers indexed by priority ordinal. */
+    private final Timer[] queueWaitTimers;
+
+    private final Timer deferredCloseTimer;
+    private final Timer immediateCloseTimer;
+
+    /** Gauges of each script scheduler, removed when an elastic scheduler is retired. */
+    private final Map<ScriptScheduler, List<Meter>> schedulerMeters = new ConcurrentHashMap<>();
+
+    /** Gauges of each engine shard, removed when the shard is retired. */
+    private final Map<EngineShard, List<Meter>> shardMeters = new ConcurrentHashMap<>();
+
+    public MicrometerScriptMetrics(MeterRegistry registry) {
+        this(registry, "script");
+    }
+
+    public MicrometerScriptMetrics(MeterRegistry registry, String prefix) {
+        this.registry = registry;
+        this.prefix = prefix;
+        Phase[] phases = Phase.values();
+        this.successTimers = new Timer[phases.length];
+        this.failureTimers = new Timer[phases.length];
+        for (Phase phase : phases) {
+            successTimers[phase.ordinal()] = phaseTimer(phase, "success");
+            failureTimers[phase.ordinal()] = phaseTimer(phase, "error");
+        }
+        this.pooledContexts = contextCounter(true);
+        this.newContexts = contextCounter(false);
+        ExecutionPriority[] priorities = ExecutionPriority.values();
+        this.queueWaitTimers = new Timer[priorities.length];
+        for (ExecutionPriority priority : priorities) {
+            queueWaitTimers[priority.ordinal()] = Timer.builder(prefix + ".scheduler.queue.wait")
+                    .description("Time executions waited for the script thread before start")
+                    .tag("lane", priority.name().toLowerCase(Locale.ROOT))
+                    .register(registry);
+        }
+        this.deferredCloseTimer = closeTimer(true);
+        this.immediateCloseTimer = closeTimer(false);
+    }
+
+    @Override
+    public void bindTo(AsyncScriptExecutor executor) {
+        Gauge.builder(prefix + ".contexts.open", executor, AsyncScriptExecutor::getOpenContextCount)
+                .description("Contexts not closed yet, including pooled idle contexts")
+                .register(registry);
+        Gauge.builder(prefix + ".operations.inflight", executor, AsyncScriptExecutor::getRunningOperationCount)
+                .description("Async host operations executed as promise and not finished yet")
+                .register(registry);
+        Gauge.builder(prefix + ".contexts.closing", executor, AsyncScriptExecutor::getPendingCloseCount)
+                .description("Released contexts waiting for the deferred teardown")
+                .register(registry);
+        Gauge.builder(prefix + ".ready", executor, ready -> ready.isReady() ? 1 : 0)
+                .description("1 once the warm-up finished and the executor is ready")
+                .register(registry);
+        Gauge.builder(prefix + ".schedulers", executor.getScriptSchedulers(), schedulers -> schedulers.getSchedulers().size())
+                .description("Script threads selected for new executions")
+                .register(registry);
+        executor.getScriptSchedulers().getSchedulers().forEach(this::bindScheduler);
+        Gauge.builder(prefix + ".operations.coalesced.inflight", executor.getOperationCoalescer(),
+                OperationCoalescer::getInFlight)
+                .description("Coalesced host operations in progress")
+                .register(registry);
+        FunctionCounter.builder(prefix + ".operations.coalesced", executor.getOperationCoalescer(),
+                OperationCoalescer::getCoalesced)
+                .description("Host operations which joined an identical operation in progress")
+                .register(registry);
+        ScriptResultCache resultCache = executor.getResultCache();
+        if (resultCache != null) {
+            cacheRequestCounter(resultCache, "hit", ScriptResultCache::getHits);
+            cacheRequestCounter(resultCache, "miss", ScriptResultCache::getMisses);
+            cacheRequestCounter(resultCache, "coalesced", ScriptResultCache::getCoalesced);
+            FunctionCounter.builder(prefix + ".result.cache.evictions", resultCache, ScriptResultCache::getEvictions)
+                    .register(registry);
+            Gauge.builder(prefix + ".result.cache.size", resultCache, ScriptResultCache::size)
+                    .register(registry);
+            Gauge.builder(prefix + ".result.cache.weight", resultCache, ScriptResultCache::getWeight)
+                    .baseUnit("bytes")
+                    .register(registry);
+        }
+        ExecutionAdmission admission = executor.getExecutionAdmission();
+        if (admission != null) {
+            Gauge.builder(prefix + ".admission.waiting", admission, ExecutionAdmission::getWaitingExecutions)
+                    .register(registry);
+            FunctionCounter.builder(prefix + ".admission.rejected", admission, ExecutionAdmission::getRejectedExecutions)
+                    .register(registry);
+        }
+    }
+
+    @Override
+    public void bindScheduler(ScriptScheduler scriptScheduler) {
+        schedulerMeters.computeIfAbsent(scriptScheduler, key -> List.of(
+                Gauge.builder(prefix + ".scheduler.queue", scriptScheduler, ScriptScheduler::getQueuedTasks)
+                        .description("Tasks waiting in the script thread queue")
+                        .tag("scheduler", scriptScheduler.getName())
+                        .register(registry),
+                Gauge.builder(prefix + ".scheduler.active", scriptScheduler, ScriptScheduler::getActiveExecutions)
+                        .description("Executions assigned to the script thread")
+                        .tag("scheduler", scriptScheduler.getName())
+                        .register(registry)));
+    }
+
+    @Override
+    public void unbindScheduler(ScriptScheduler scriptScheduler) {
+        List<Meter> meters = schedulerMeters.remove(scriptScheduler);
+        if (meters != null) {
+            meters.forEach(registry::remove);
+        }
+    }
+
+    @Override
+    public void bindShard(EngineShard shard) {
+        shardMeters.computeIfAbsent(shard, key -> List.of(
+                Gauge.builder(prefix + ".engine.contexts.open", shard, EngineShard::getOpenContexts)
+                        .description("Contexts of the engine shard not closed yet")
+                        .tag("shard", shard.getName())
+                        .register(registry),
+                Gauge.builder(prefix + ".engine.sources.cached", shard, EngineShard::getCachedSources)
+                        .description("Sources cached by the engine of the shard")
+                        .tag("shard", shard.getName())
+                        .register(registry),
+                FunctionCounter.builder(prefix + ".engine.contexts.created", shard, EngineShard::getTotalContexts)
+                        .tag("shard", shard.getName())
+                        .register(registry)));
+    }
+
+    @Override
+    public void unbindShard(EngineShard shard) {
+        List<Meter> meters = shardMeters.remove(shard);
+        if (meters != null) {
+            meters.forEach(registry::remove);
+        }
+    }
+
+    @Override
+    public void recordPhase(Phase phase, long durationNanos, boolean success) {
+        (success ? successTimers : failureTimers)[phase.ordinal()].record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void recordContextAcquired(boolean pooled) {
+        (pooled ? pooledContexts : newContexts).increment();
+    }
+
+    @Override
+    public void recordQueueWait(ExecutionPriority priority, long waitNanos) {
+        queueWaitTimers[priority.ordinal()].record(waitNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void recordContextClosed(long durationNanos, boolean deferred) {
+        (deferred ? deferredCloseTimer : immediateCloseTimer).record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void recordOperationLimited(String limit, boolean queued) {
+        // limits are configured description prefixes, so the tag has low cardinality
+        Counter.builder(prefix + ".operations.limited")
+                .description("Host operations queued or rejected by operation limits")
+                .tag("limit", limit != null ? limit.trim() : "execution")
+                .tag("outcome", queued ? "queued" : "rejected")
+                .register(registry)
+                .increment();
+    }
+
+    private void cacheRequestCounter(ScriptResultCache resultCache, String result,
+                                     ToDoubleFunction<ScriptResultCache> count) {
+        FunctionCounter.builder(prefix + ".result.cache.requests", resultCache, count)
+                .tag("result", result)
+                .register(registry);
+    }
+
+    private Timer phaseTimer(Phase phase, String outcome) {
+        return Timer.builder(prefix + ".phase")
+                .tag("phase", phase.name().toLowerCase(Locale.ROOT))
+                .tag("outcome", outcome)
+                .register(registry);
+    }
+
+    private Timer closeTimer(boolean deferred) {
+        return Timer.builder(prefix + ".contexts.close")
+                .description("Closing of contexts released after execution")
+                .tag("deferred", String.valueOf(deferred))
+                .register(registry);
+    }
+
+    private Counter contextCounter(boolean pooled) {
+        return Counter.builder(prefix + ".contexts.acquired")
+                .tag("pooled", String.valueOf(pooled))
+                .register(registry);
+    }
+}
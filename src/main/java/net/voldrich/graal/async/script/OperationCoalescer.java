@@ -0,0 +1,104 @@
+package net.voldrich.graal.async.script;
+
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Executor wide single-flight of async host operations, see {@link ScriptContext#executeAsPromise(Mono, String, Object)}.
+ * Concurrent operations with the same key share one upstream subscription. Shared subscription is reference counted,
+ * it is cancelled only when all callers cancel (e.g. all their contexts are closed). Operation is removed once it
+ * terminates, later callers execute it again.
+ **/
+public class OperationCoalescer {
+
+    private final ConcurrentHashMap<Object, Mono<Object>> operations = new ConcurrentHashMap<>();
+
+    private final LongAdder coalesced = new LongAdder();
+
+    @SuppressWarnings("unchecked")
+    <T> Mono<T> coalesce(Object key, Mono<T> operation) {
+        return Mono.defer(() -> {
+            boolean[] created = new boolean[1];
+            Mono<Object> shared = operations.computeIfAbsent(key, missingKey -> {
+                created[0] = true;
+                return share(missingKey, operation);
+            });
+            if (!created[0]) {
+                coalesced.increment();
+            }
+            return (Mono<T>) shared;
+        });
+    }
+
+    private Mono<Object> share(Object key, Mono<?> operation) {
+        return new SharedOperation(key, operation).result;
+    }
+
+    /**
+     * Operation connected on the first subscription. Result is kept by a sink, so callers which obtained
+     * the operation just before it terminated still receive the result.
+     **/
+    private final class SharedOperation {
+        private final Object key;
+        private final Mono<?> operation;
+        private final Sinks.One<Object> sink = Sinks.one();
+        private final Mono<Object> result;
+        private int subscribers;
+        private Disposable upstream;
+
+        SharedOperation(Object key, Mono<?> operation) {
+            this.key = key;
+            this.operation = operation;
+            this.result = sink.asMono()
+                    .doOnSubscribe(subscription -> subscribed())
+                    .doOnCancel(this::cancelled);
+        }
+
+        private synchronized void subscribed() {
+            if (subscribers++ == 0 && upstream == null) {
+                upstream = operation.subscribe(
+                        value -> {
+                            // removed before the result is delivered, so callers resuming on it do not join
+                            // a finished operation
+                            remove();
+                            sink.tryEmitValue(value);
+                        },
+                        error -> {
+                            remove();
+                            sink.tryEmitError(error);
+                        },
+                        () -> {
+                            remove();
+                            sink.tryEmitEmpty();
+                        });
+            }
+        }
+
+        private synchronized void cancelled() {
+            if (--subscribers == 0 && upstream != null) {
+                // last caller cancelled, a caller subscribing later connects the operation again
+                remove();
+                upstream.dispose();
+                upstream = null;
+            }
+        }
+
+        private void remove() {
+            operations.remove(key, result);
+        }
+    }
+
+    /** Operations in progress with at least one caller. */
+    public int getInFlight() {
+        return operations.size();
+    }
+
+    /** Callers which joined an operation already in progress. */
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+}
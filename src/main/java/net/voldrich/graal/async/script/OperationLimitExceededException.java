@@ -0,0 +1,19 @@
+package net.voldrich.graal.async.script;
+
+import lombok.Getter;
+
+/**
+ * Host operation was not started because it exceeded {@link OperationLimits} of the execution.
+ * Rejects the promise of the operation, the script can handle it.
+ **/
+@Getter
+public class OperationLimitExceededException extends RuntimeException {
+
+    /** Description prefix of the exceeded limit, null for limits of the whole execution. */
+    private final String limit;
+
+    public OperationLimitExceededException(String limit, String message) {
+        super(message);
+        this.limit = limit;
+    }
+}
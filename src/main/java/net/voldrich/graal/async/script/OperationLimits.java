@@ -0,0 +1,44 @@
+package net.voldrich.graal.async.script;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Limits of async host operations ({@link ScriptContext#executeAsPromise(reactor.core.publisher.Mono, String)})
+ * started by one execution. Operations over the concurrency limit wait in the context until an operation finishes,
+ * or fail fast. Operations over the total limit fail, the script sees a rejected promise.
+ * Operations can be limited further by their description prefix, these limits apply in addition to the execution ones.
+ **/
+@Getter
+@Setter
+@Accessors(chain = true)
+public class OperationLimits {
+
+    /** Maximum number of operations started by one execution, zero means unlimited. */
+    private int maxOperations;
+
+    /** Maximum number of operations in flight at a time, zero means unlimited. */
+    private int maxConcurrentOperations;
+
+    /** Operations over the concurrency limit fail instead of waiting for a running operation to finish. */
+    private boolean failFast;
+
+    /** Limits of operations by description prefix, first matching prefix is used. */
+    private Map<String, OperationLimits> descriptionLimits = new LinkedHashMap<>();
+
+    /**
+     * Limits operations whose description starts with the prefix, e.g. "get " for http gets of a client binding.
+     **/
+    public OperationLimits limitDescription(String descriptionPrefix, OperationLimits limits) {
+        descriptionLimits.put(descriptionPrefix, limits);
+        return this;
+    }
+
+    boolean isUnlimited() {
+        return maxOperations <= 0 && maxConcurrentOperations <= 0 && descriptionLimits.isEmpty();
+    }
+}
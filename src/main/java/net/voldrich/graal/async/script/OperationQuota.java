@@ -0,0 +1,155 @@
+package net.voldrich.graal.async.script;
+
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Enforces {@link OperationLimits} of the current execution in a context. Counters are reset for each execution,
+ * operations of a previous execution release only their own counters.
+ * Accessed only on the script thread, operations finished on other threads release their slot by a script thread task.
+ **/
+class OperationQuota {
+
+    private final ScriptContextImpl scriptContextImpl;
+
+    private OperationLimits limits;
+
+    /** Counters of the execution limits and of each used description limit. */
+    private final Map<OperationLimits, Counter> counters = new IdentityHashMap<>();
+
+    /** Operations waiting for a concurrency slot, started in order as slots are released. */
+    private final ArrayDeque<Waiting> waiting = new ArrayDeque<>();
+
+    OperationQuota(ScriptContextImpl scriptContextImpl) {
+        this.scriptContextImpl = scriptContextImpl;
+    }
+
+    void reset(OperationLimits limits) {
+        this.limits = limits != null && !limits.isUnlimited() ? limits : null;
+        counters.clear();
+        waiting.clear();
+    }
+
+    /**
+     * Returns the operation limited by the quota: as is when in limits, delayed until a slot is released
+     * or failing with {@link OperationLimitExceededException}.
+     **/
+    Mono<?> limit(Mono<?> operation, String description) {
+        if (limits == null) {
+            return operation;
+        }
+        List<Counter> applicable = getCounters(description);
+        for (Counter counter : applicable) {
+            if (counter.limits.getMaxOperations() > 0 && counter.total >= counter.limits.getMaxOperations()) {
+                return reject(counter, "Limit of " + counter.limits.getMaxOperations() + " operations exceeded", description);
+            }
+        }
+        Counter blocking = getBlocking(applicable);
+        if (blocking != null && blocking.limits.isFailFast()) {
+            return reject(blocking, "Limit of " + blocking.limits.getMaxConcurrentOperations()
+                    + " concurrent operations exceeded", description);
+        }
+        applicable.forEach(counter -> counter.total++);
+        if (blocking == null) {
+            return start(operation, applicable);
+        }
+        Waiting queued = new Waiting(applicable);
+        waiting.add(queued);
+        scriptContextImpl.getScriptMetrics().recordOperationLimited(blocking.name, true);
+        return queued.gate.asMono()
+                .doOnCancel(() -> queued.cancelled = true)
+                .then(Mono.defer(() -> track(operation, applicable)));
+    }
+
+    private Mono<?> start(Mono<?> operation, List<Counter> applicable) {
+        applicable.forEach(counter -> counter.inFlight++);
+        return track(operation, applicable);
+    }
+
+    private Mono<?> track(Mono<?> operation, List<Counter> applicable) {
+        return operation.doFinally(signal -> {
+            if (scriptContextImpl.isOwnerThread()) {
+                release(applicable);
+            } else {
+                scriptContextImpl.getScheduler().schedule(() -> release(applicable));
+            }
+        });
+    }
+
+    private void release(List<Counter> applicable) {
+        applicable.forEach(counter -> counter.inFlight--);
+        List<Waiting> started = new ArrayList<>();
+        Iterator<Waiting> iterator = waiting.iterator();
+        while (iterator.hasNext()) {
+            Waiting next = iterator.next();
+            if (next.cancelled) {
+                iterator.remove();
+            } else if (getBlocking(next.counters) == null) {
+                iterator.remove();
+                next.counters.forEach(counter -> counter.inFlight++);
+                started.add(next);
+            }
+        }
+        // operations are started after the queue is updated, synchronous ones release their slot within the call
+        started.forEach(next -> next.gate.tryEmitEmpty());
+    }
+
+    private Mono<?> reject(Counter counter, String reason, String description) {
+        scriptContextImpl.getScriptMetrics().recordOperationLimited(counter.name, false);
+        String scope = counter.name != null ? " of operations '" + counter.name + "'" : " of the execution";
+        return Mono.error(new OperationLimitExceededException(counter.name, reason + scope + ": " + description));
+    }
+
+    private static Counter getBlocking(List<Counter> applicable) {
+        for (Counter counter : applicable) {
+            int maxConcurrent = counter.limits.getMaxConcurrentOperations();
+            if (maxConcurrent > 0 && counter.inFlight >= maxConcurrent) {
+                return counter;
+            }
+        }
+        return null;
+    }
+
+    private List<Counter> getCounters(String description) {
+        List<Counter> applicable = new ArrayList<>(2);
+        applicable.add(counters.computeIfAbsent(limits, l -> new Counter(null, l)));
+        if (description != null) {
+            for (Map.Entry<String, OperationLimits> entry : limits.getDescriptionLimits().entrySet()) {
+                if (description.startsWith(entry.getKey())) {
+                    applicable.add(counters.computeIfAbsent(entry.getValue(), l -> new Counter(entry.getKey(), l)));
+                    break;
+                }
+            }
+        }
+        return applicable;
+    }
+
+    private static final class Counter {
+        private final String name;
+        private final OperationLimits limits;
+        private int total;
+        private int inFlight;
+
+        Counter(String name, OperationLimits limits) {
+            this.name = name;
+            this.limits = limits;
+        }
+    }
+
+    private static final class Waiting {
+        private final List<Counter> counters;
+        private final Sinks.Empty<Void> gate = Sinks.empty();
+        private volatile boolean cancelled;
+
+        Waiting(List<Counter> counters) {
+            this.counters = counters;
+        }
+    }
+}
@@ -12,38 +12,82 @@ public class PromiseMonoSubscriber extends BaseSubscriber<Object> {
     private final Value reject;
     private final String operationDesc;
     private final String jsStack;
+    private final int operationIndex;
 
     private volatile Subscription subscription;
+    private volatile boolean resolved;
 
-    public PromiseMonoSubscriber(ScriptContextImpl scriptContextImpl, Value resolve, Value reject, String operationDesc, String jsStack) {
+    public PromiseMonoSubscriber(ScriptContextImpl scriptContextImpl, Value resolve, Value reject, String operationDesc,
+                                 String jsStack, int operationIndex) {
         this.scriptContextImpl = scriptContextImpl;
         this.resolve = resolve;
         this.reject = reject;
         this.operationDesc = operationDesc;
         this.jsStack = jsStack;
+        this.operationIndex = operationIndex;
     }
 
     @Override
     protected void hookOnSubscribe(Subscription subscription) {
-        super.hookOnSubscribe(subscription);
         this.subscription = subscription;
         scriptContextImpl.registerSubscriber(subscription, this);
+        // request only after registration, synchronous operations complete within the request call
+        super.hookOnSubscribe(subscription);
     }
 
+    // Operation result needs to be delivered on a thread that executed the script.
+    // This ensures that one particular script code is always executed on the same thread
+    // and we don't need to manage context.enter and context.leave.
+    // Signals already emitted on that thread are delivered inline without scheduling.
+
     @Override
     protected void hookOnNext(Object value) {
         // we resolve the promise when receiving first value
-        resolve.executeVoid(value);
+        resolved = true;
+        onScriptThread(() -> resolveNow(value));
     }
 
     @Override
     protected void hookOnError(Throwable error) {
+        scriptContextImpl.unregisterSubscriber(subscription);
+        onScriptThread(() -> rejectNow(error));
+    }
+
+    private void onScriptThread(Runnable signal) {
+        if (scriptContextImpl.isOwnerThread()) {
+            signal.run();
+        } else {
+            scriptContextImpl.getScheduler().schedule(signal);
+        }
+    }
+
+    private void resolveNow(Object value) {
+        if (!scriptContextImpl.isClosed()) {
+            resolve.executeVoid(value);
+        }
+    }
+
+    private void resolveUndefined() {
+        if (!scriptContextImpl.isClosed()) {
+            resolve.executeVoid();
+        }
+    }
+
+    private void rejectNow(Throwable error) {
+        if (scriptContextImpl.isClosed()) {
+            return;
+        }
         if (error instanceof ScriptExecutionException) {
             reject.executeVoid(error);
         } else {
-            reject.executeVoid(new ScriptExecutionException(scriptContextImpl, error, operationDesc + "\n" + jsStack));
+            reject.executeVoid(new ScriptExecutionException(scriptContextImpl, error, operationDesc + "\n" + getStack()));
         }
-        scriptContextImpl.unregisterSubscriber(subscription);
+    }
+
+    private String getStack() {
+        return jsStack != null
+                ? jsStack
+                : "    at async operation #" + operationIndex + " of the execution (stack not captured)";
     }
 
     @Override
@@ -54,6 +98,11 @@ public class PromiseMonoSubscriber extends BaseSubscriber<Object> {
     @Override
     protected void hookOnComplete() {
         scriptContextImpl.unregisterSubscriber(subscription);
+        if (!resolved) {
+            // empty operation resolves the promise with undefined instead of leaving it pending forever
+            resolved = true;
+            onScriptThread(this::resolveUndefined);
+        }
     }
 
 }
@@ -0,0 +1,58 @@
+package net.voldrich.graal.async.script;
+
+import org.graalvm.polyglot.Value;
+import org.graalvm.polyglot.proxy.Proxy;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Exposes host data to scripts without converting it to JS objects first.
+ * Maps and lists (e.g. a parsed JSON tree) are wrapped in read-only proxies, nested values are wrapped lazily
+ * when the script accesses them, so a script reading a few fields of a large input converts only those.
+ **/
+public final class ReadOnlyProxies {
+
+    private ReadOnlyProxies() {
+    }
+
+    /**
+     * Wraps maps (with string keys), lists and arrays in read-only proxies and returns other values as they are.
+     * BigDecimal and BigInteger are passed as strings, a JS number cannot hold them without losing precision.
+     **/
+    public static Object wrap(Object data) {
+        if (data == null || data instanceof String || data instanceof Boolean || data instanceof Value
+                || data instanceof Proxy) {
+            return data;
+        }
+        if (data instanceof Map) {
+            return new ReadOnlyProxyObject((Map<?, ?>) data);
+        }
+        if (data instanceof List) {
+            return new ReadOnlyProxyArray((List<?>) data);
+        }
+        if (data instanceof Object[]) {
+            return new ReadOnlyProxyArray(Arrays.asList((Object[]) data));
+        }
+        if (data instanceof BigDecimal) {
+            return ((BigDecimal) data).toPlainString();
+        }
+        if (data instanceof BigInteger) {
+            return data.toString();
+        }
+        if (data instanceof Character) {
+            return data.toString();
+        }
+        return data;
+    }
+
+    /**
+     * Whether the wrapped value is a proxy worth keeping, so repeated access returns the same object.
+     **/
+    static boolean isContainer(Object wrapped) {
+        return wrapped instanceof ReadOnlyProxyObject || wrapped instanceof ReadOnlyProxyArray;
+    }
+}
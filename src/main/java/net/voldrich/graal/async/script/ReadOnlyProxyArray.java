@@ -0,0 +1,56 @@
+package net.voldrich.graal.async.script;
+
+import org.graalvm.polyglot.Value;
+import org.graalvm.polyglot.proxy.ProxyArray;
+
+import java.util.List;
+
+/**
+ * Read-only JS array over a host list, see {@link ReadOnlyProxies#wrap(Object)}.
+ * Nested maps and lists are wrapped on first access and kept, so the script sees the same object on each access.
+ * Must be accessed only by the thread executing the context.
+ **/
+public final class ReadOnlyProxyArray implements ProxyArray {
+
+    private final List<?> list;
+
+    private Object[] wrappedElements;
+
+    ReadOnlyProxyArray(List<?> list) {
+        this.list = list;
+    }
+
+    @Override
+    public Object get(long index) {
+        if (index < 0 || index >= list.size()) {
+            throw new ArrayIndexOutOfBoundsException("Invalid index " + index + " of script input array");
+        }
+        int position = (int) index;
+        Object wrapped = wrappedElements != null ? wrappedElements[position] : null;
+        if (wrapped == null) {
+            wrapped = ReadOnlyProxies.wrap(list.get(position));
+            if (ReadOnlyProxies.isContainer(wrapped)) {
+                if (wrappedElements == null) {
+                    wrappedElements = new Object[list.size()];
+                }
+                wrappedElements[position] = wrapped;
+            }
+        }
+        return wrapped;
+    }
+
+    @Override
+    public void set(long index, Value value) {
+        throw new UnsupportedOperationException("Script input is read-only, can not set element " + index);
+    }
+
+    @Override
+    public boolean remove(long index) {
+        throw new UnsupportedOperationException("Script input is read-only, can not remove element " + index);
+    }
+
+    @Override
+    public long getSize() {
+        return list.size();
+    }
+}
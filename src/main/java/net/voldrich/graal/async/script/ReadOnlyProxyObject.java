@@ -0,0 +1,59 @@
+package net.voldrich.graal.async.script;
+
+import org.graalvm.polyglot.Value;
+import org.graalvm.polyglot.proxy.ProxyArray;
+import org.graalvm.polyglot.proxy.ProxyObject;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Read-only JS object over a host map, see {@link ReadOnlyProxies#wrap(Object)}.
+ * Nested maps and lists are wrapped on first access and kept, so the script sees the same object on each access.
+ * Must be accessed only by the thread executing the context.
+ **/
+public final class ReadOnlyProxyObject implements ProxyObject {
+
+    private final Map<?, ?> map;
+
+    private Map<String, Object> wrappedMembers;
+
+    ReadOnlyProxyObject(Map<?, ?> map) {
+        this.map = map;
+    }
+
+    @Override
+    public Object getMember(String key) {
+        Object wrapped = wrappedMembers != null ? wrappedMembers.get(key) : null;
+        if (wrapped == null) {
+            wrapped = ReadOnlyProxies.wrap(map.get(key));
+            if (ReadOnlyProxies.isContainer(wrapped)) {
+                if (wrappedMembers == null) {
+                    wrappedMembers = new HashMap<>();
+                }
+                wrappedMembers.put(key, wrapped);
+            }
+        }
+        return wrapped;
+    }
+
+    @Override
+    public Object getMemberKeys() {
+        return ProxyArray.fromArray(map.keySet().stream().map(String::valueOf).toArray());
+    }
+
+    @Override
+    public boolean hasMember(String key) {
+        return map.containsKey(key);
+    }
+
+    @Override
+    public void putMember(String key, Value value) {
+        throw new UnsupportedOperationException("Script input is read-only, can not set member " + key);
+    }
+
+    @Override
+    public boolean removeMember(String key) {
+        throw new UnsupportedOperationException("Script input is read-only, can not remove member " + key);
+    }
+}
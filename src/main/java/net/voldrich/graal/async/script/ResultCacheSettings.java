@@ -0,0 +1,29 @@
+package net.voldrich.graal.async.script;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+
+import java.time.Duration;
+import java.util.function.ToLongFunction;
+
+/**
+ * Limits of the cache of script results, see {@link ScriptHandler#getResultCacheKey()}.
+ * Least recently used results are evicted first.
+ **/
+@Getter
+@Setter
+@Accessors(chain = true)
+public class ResultCacheSettings {
+
+    private int maxEntries = 1000;
+
+    /** How long a result is cached after it was produced. */
+    private Duration timeToLive = Duration.ofMinutes(1);
+
+    /** Maximum estimated memory of cached results in bytes. */
+    private long maxWeight = 64L * 1024 * 1024;
+
+    /** Estimates memory of a cached result in bytes. */
+    private ToLongFunction<Object> weigher = ScriptResultCache::estimateWeight;
+}
@@ -0,0 +1,119 @@
+package net.voldrich.graal.async.script;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.Disposable;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically evaluates utilization of elastic script schedulers and adds or retires one scheduler at a time.
+ * Evaluation uses counters accumulated since the previous one: average queue wait of started executions,
+ * ratio of busy time of the threads and ratio of busy time spent off CPU (blocked in host calls or locks).
+ **/
+@Slf4j
+class SchedulerAutoscaler {
+
+    private static final int AVAILABLE_PROCESSORS = Runtime.getRuntime().availableProcessors();
+
+    private final ScriptSchedulers scriptSchedulers;
+
+    private final ElasticSettings settings;
+
+    /** Counters of each scheduler at the previous evaluation. */
+    private final Map<ScriptScheduler, long[]> previousCounters = new HashMap<>();
+
+    private long previousEvaluation = System.nanoTime();
+
+    private int scaleUpVotes;
+    private int scaleDownVotes;
+
+    SchedulerAutoscaler(ScriptSchedulers scriptSchedulers, ElasticSettings settings) {
+        this.scriptSchedulers = scriptSchedulers;
+        this.settings = settings;
+    }
+
+    Disposable start() {
+        long intervalMs = settings.getEvaluationInterval().toMillis();
+        return Schedulers.parallel().schedulePeriodically(this::evaluateSafely, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void evaluateSafely() {
+        try {
+            evaluate();
+        } catch (Exception e) {
+            log.warn("Evaluation of script scheduler utilization failed", e);
+        }
+    }
+
+    synchronized void evaluate() {
+        long now = System.nanoTime();
+        long elapsed = Math.max(1, now - previousEvaluation);
+        previousEvaluation = now;
+        List<ScriptScheduler> schedulers = scriptSchedulers.getSchedulers();
+        long busy = 0;
+        long cpu = 0;
+        long queueWait = 0;
+        long started = 0;
+        Map<ScriptScheduler, long[]> counters = new HashMap<>();
+        for (ScriptScheduler scriptScheduler : schedulers) {
+            long[] current = {scriptScheduler.getBusyNanos(), scriptScheduler.getCpuNanos(),
+                    scriptScheduler.getQueueWaitNanos(), scriptScheduler.getStartedExecutions()};
+            long[] previous = previousCounters.getOrDefault(scriptScheduler, new long[current.length]);
+            busy += current[0] - previous[0];
+            cpu += current[1] - previous[1];
+            queueWait += current[2] - previous[2];
+            started += current[3] - previous[3];
+            counters.put(scriptScheduler, current);
+        }
+        // retired schedulers are dropped
+        previousCounters.clear();
+        previousCounters.putAll(counters);
+
+        int size = schedulers.size();
+        double utilization = (double) busy / ((double) elapsed * size);
+        double blockedRatio = busy > 0 ? 1 - (double) cpu / busy : 0;
+        long averageQueueWait = started > 0 ? queueWait / started : 0;
+        boolean waiting = averageQueueWait > settings.getScaleUpQueueWait().toNanos();
+
+        if (waiting && size < settings.getMaxSchedulers()
+                && (size < AVAILABLE_PROCESSORS || blockedRatio >= settings.getScaleUpBlockedRatio())) {
+            scaleUpVotes++;
+            scaleDownVotes = 0;
+        } else if (!waiting && utilization < settings.getScaleDownUtilization() && size > settings.getMinSchedulers()) {
+            scaleDownVotes++;
+            scaleUpVotes = 0;
+        } else {
+            scaleUpVotes = 0;
+            scaleDownVotes = 0;
+        }
+        log.trace("Script schedulers: {}, utilization {}, blocked {}, average queue wait {} us",
+                size, utilization, blockedRatio, TimeUnit.NANOSECONDS.toMicros(averageQueueWait));
+
+        if (scaleUpVotes >= settings.getStableEvaluations()) {
+            scaleUpVotes = 0;
+            ScriptScheduler added = scriptSchedulers.addScheduler();
+            log.info("Added script scheduler {}, utilization {}, blocked {}, average queue wait {} us", added.getName(),
+                    utilization, blockedRatio, TimeUnit.NANOSECONDS.toMicros(averageQueueWait));
+        } else if (scaleDownVotes >= settings.getStableEvaluations()) {
+            scaleDownVotes = 0;
+            ScriptScheduler retired = leastLoaded(schedulers);
+            if (scriptSchedulers.retireScheduler(retired)) {
+                log.info("Retiring script scheduler {}, utilization {}", retired.getName(), utilization);
+            }
+        }
+    }
+
+    private static ScriptScheduler leastLoaded(List<ScriptScheduler> schedulers) {
+        ScriptScheduler selected = schedulers.get(schedulers.size() - 1);
+        for (ScriptScheduler candidate : schedulers) {
+            if (candidate.getLoad() < selected.getLoad()) {
+                selected = candidate;
+            }
+        }
+        return selected;
+    }
+}
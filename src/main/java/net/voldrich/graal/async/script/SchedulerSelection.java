@@ -0,0 +1,13 @@
+package net.voldrich.graal.async.script;
+
+/**
+ * Strategy used by {@link ScriptSchedulers} to pick the script thread for a new execution.
+ **/
+public enum SchedulerSelection {
+    /** Schedulers are used one after another regardless of their load. */
+    ROUND_ROBIN,
+    /** Scheduler with the lowest load is used, scans all schedulers. */
+    LEAST_LOADED,
+    /** Less loaded of two randomly picked schedulers is used. */
+    POWER_OF_TWO_CHOICES
+}
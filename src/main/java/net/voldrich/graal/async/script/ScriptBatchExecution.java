@@ -0,0 +1,127 @@
+package net.voldrich.graal.async.script;
+
+import org.graalvm.polyglot.Value;
+import org.graalvm.polyglot.proxy.ProxyExecutable;
+import reactor.core.publisher.FluxSink;
+
+import java.util.List;
+
+/**
+ * Executes the entry function for each input of a batch in one context.
+ * Inputs are executed concurrently, results are emitted in input order as soon as all preceding ones are settled.
+ * Failure of an input fails only its own result. Called on the script thread except {@link #abort(Throwable)}.
+ **/
+class ScriptBatchExecution<I, T> {
+
+    private final ScriptContextImpl scriptContextImpl;
+    private final BatchScriptHandler<I, T> scriptHandler;
+    private final List<I> inputs;
+    private final FluxSink<BatchResult<I, T>> sink;
+
+    /** Settled results not yet emitted, results are emitted in order from nextResult. */
+    private final Object[] results;
+    private int nextResult;
+
+    ScriptBatchExecution(ScriptContextImpl scriptContextImpl,
+                         BatchScriptHandler<I, T> scriptHandler,
+                         List<I> inputs,
+                         FluxSink<BatchResult<I, T>> sink) {
+        this.scriptContextImpl = scriptContextImpl;
+        this.scriptHandler = scriptHandler;
+        this.inputs = inputs;
+        this.sink = sink;
+        this.results = new Object[inputs.size()];
+    }
+
+    void start(Value entry) {
+        if (entry == null || !entry.canExecute()) {
+            failRemaining(new IllegalStateException("Batch script must evaluate to a function"));
+            return;
+        }
+        for (int index = 0; index < inputs.size() && !scriptContextImpl.isClosed(); index++) {
+            execute(entry, index);
+        }
+    }
+
+    /**
+     * Fails all not yet settled inputs, used when the whole batch fails (e.g. the entry function is not evaluated).
+     **/
+    void failRemaining(Throwable error) {
+        ScriptExecutionException exception = AsyncScriptExecutor.convertError(error, scriptContextImpl);
+        for (int index = nextResult; index < results.length; index++) {
+            if (results[index] == null) {
+                results[index] = BatchResult.failure(inputs.get(index), exception);
+            }
+        }
+        drain();
+    }
+
+    /**
+     * Fails remaining inputs on the script thread, called when an execution limit is exceeded.
+     **/
+    void abort(Throwable error) {
+        scriptContextImpl.getScheduler().schedule(() -> failRemaining(error));
+    }
+
+    private void execute(Value entry, int index) {
+        try {
+            Value response = scriptHandler.executeEntry(scriptContextImpl, entry, inputs.get(index));
+            if (AsyncScriptExecutor.isThenable(response)) {
+                scriptContextImpl.getIntrinsics().getPromiseBridge().executeVoid(response, (ProxyExecutable) arguments -> {
+                    if (arguments[0].asBoolean()) {
+                        succeeded(index, arguments[1].as(Object.class));
+                    } else {
+                        failed(index, arguments[1].as(Object.class));
+                    }
+                    return null;
+                });
+            } else {
+                succeeded(index, response);
+            }
+        } catch (Exception e) {
+            failed(index, e);
+        }
+    }
+
+    private void succeeded(int index, Object value) {
+        long transformationStart = System.nanoTime();
+        T result;
+        try {
+            result = scriptHandler.transformScriptResponse(scriptContextImpl, value);
+        } catch (Exception e) {
+            recordTransformation(transformationStart, false);
+            failed(index, e);
+            return;
+        }
+        recordTransformation(transformationStart, true);
+        settle(index, BatchResult.success(inputs.get(index), result));
+    }
+
+    private void recordTransformation(long startNanos, boolean success) {
+        scriptContextImpl.getScriptMetrics().recordPhase(ScriptMetrics.Phase.TRANSFORMATION,
+                System.nanoTime() - startNanos, success);
+    }
+
+    private void failed(int index, Object error) {
+        settle(index, BatchResult.failure(inputs.get(index), AsyncScriptExecutor.convertError(error, scriptContextImpl)));
+    }
+
+    private void settle(int index, BatchResult<I, T> result) {
+        if (index >= nextResult && results[index] == null) {
+            results[index] = result;
+            drain();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void drain() {
+        while (nextResult < results.length && results[nextResult] != null) {
+            BatchResult<I, T> result = (BatchResult<I, T>) results[nextResult];
+            results[nextResult++] = null;
+            sink.next(result);
+        }
+        if (nextResult == results.length) {
+            sink.complete();
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package net.voldrich.graal.async.script;
+
+import org.graalvm.polyglot.Value;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Collects keys loaded by a script into batches executed by one host call, DataLoader style. Keys loaded in one
+ * script tick (or batch window) are dispatched together, each load gets its own promise resolved with the value
+ * of its key. Equal keys within a batch are loaded once. Created by a binding per context in
+ * {@link ScriptHandler#initiateContext(ScriptContext)}:
+ * <pre>
+ *     ScriptBatchLoader&lt;String, User&gt; users = new ScriptBatchLoader&lt;&gt;(scriptContext, "users", client::getUsers);
+ *     bindings.putMember("loadUser", (ProxyExecutable) arguments -&gt; users.load(arguments[0].asString()));
+ * </pre>
+ * Batch function returns values by key, missing keys resolve with undefined and a failed batch rejects all its loads.
+ * {@link #load(Object)} must be called on the script thread.
+ **/
+public final class ScriptBatchLoader<K, V> {
+
+    private final ScriptContext scriptContext;
+    private final String description;
+    private final Function<List<K>, Mono<Map<K, V>>> batchFunction;
+    private final BatchLoaderSettings settings;
+
+    /** Batch collecting keys of the current tick, null when no key was loaded since the last dispatch. */
+    private Batch pending;
+
+    private volatile long dispatchedBatches;
+    private volatile long dispatchedKeys;
+
+    public ScriptBatchLoader(ScriptContext scriptContext, String description,
+                             Function<List<K>, Mono<Map<K, V>>> batchFunction) {
+        this(scriptContext, description, batchFunction, new BatchLoaderSettings());
+    }
+
+    public ScriptBatchLoader(ScriptContext scriptContext, String description,
+                             Function<List<K>, Mono<Map<K, V>>> batchFunction, BatchLoaderSettings settings) {
+        this.scriptContext = scriptContext;
+        this.description = description;
+        this.batchFunction = batchFunction;
+        this.settings = settings;
+    }
+
+    /**
+     * Adds the key to the pending batch and returns a promise of its value.
+     **/
+    public Value load(K key) {
+        if (pending == null) {
+            pending = new Batch();
+            scheduleDispatch(pending);
+        }
+        Batch batch = pending;
+        Sinks.One<Object> result = batch.add(key);
+        if (batch.keys.size() >= settings.getMaxBatchSize()) {
+            dispatch(batch);
+        }
+        return scriptContext.executeAsPromise(batch.subscribe(result), description + " " + key);
+    }
+
+    /** Number of batch calls executed. */
+    public long getDispatchedBatches() {
+        return dispatchedBatches;
+    }
+
+    /** Number of distinct keys loaded by all batch calls. */
+    public long getDispatchedKeys() {
+        return dispatchedKeys;
+    }
+
+    private void scheduleDispatch(Batch batch) {
+        Runnable dispatch = () -> dispatch(batch);
+        long windowNanos = settings.getBatchWindow().toNanos();
+        if (windowNanos <= 0) {
+            // runs after the current task and the microtasks it queued
+            scriptContext.getScheduler().schedule(dispatch);
+        } else {
+            Schedulers.parallel().schedule(() -> scriptContext.getScheduler().schedule(dispatch),
+                    windowNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Executes the batch call, called on the script thread once per batch.
+     **/
+    private void dispatch(Batch batch) {
+        if (pending == batch) {
+            pending = null;
+        }
+        if (batch.dispatched) {
+            return;
+        }
+        batch.dispatched = true;
+        if (batch.cancelled || scriptContext.isClosed()) {
+            return;
+        }
+        List<K> keys = new ArrayList<>(batch.keys.keySet());
+        dispatchedBatches++;
+        dispatchedKeys += keys.size();
+        batch.upstream = Mono.defer(() -> batchFunction.apply(keys))
+                .subscribe(batch::settle, batch::fail, batch::complete);
+    }
+
+    /**
+     * Keys of one batch call, the call is cancelled once all loads waiting for it are cancelled.
+     **/
+    private final class Batch {
+        private final Map<K, Sinks.One<Object>> keys = new LinkedHashMap<>();
+        private final AtomicInteger subscribers = new AtomicInteger();
+        private boolean dispatched;
+        private volatile boolean cancelled;
+        private volatile Disposable upstream;
+
+        Sinks.One<Object> add(K key) {
+            return keys.computeIfAbsent(key, k -> Sinks.one());
+        }
+
+        Mono<Object> subscribe(Sinks.One<Object> result) {
+            return result.asMono()
+                    .doOnSubscribe(subscription -> subscribers.incrementAndGet())
+                    .doOnCancel(this::cancel);
+        }
+
+        private void cancel() {
+            if (subscribers.decrementAndGet() == 0) {
+                cancelled = true;
+                Disposable call = upstream;
+                if (call != null) {
+                    call.dispose();
+                }
+            }
+        }
+
+        void settle(Map<K, V> values) {
+            keys.forEach((key, result) -> {
+                V value = values.get(key);
+                if (value != null) {
+                    result.tryEmitValue(value);
+                } else {
+                    result.tryEmitEmpty();
+                }
+            });
+        }
+
+        void fail(Throwable error) {
+            keys.values().forEach(result -> result.tryEmitError(error));
+        }
+
+        void complete() {
+            // batch function completed without values, all keys are missing
+            keys.values().forEach(Sinks.One::tryEmitEmpty);
+        }
+    }
+}
@@ -1,10 +1,13 @@
 package net.voldrich.graal.async.script;
 
 import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Source;
 import org.graalvm.polyglot.Value;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Scheduler;
 
+import java.util.function.Supplier;
+
 /**
  * Manages graal polyglot context and its related data.
  * Each script execution had its own unique context.
@@ -14,10 +17,60 @@ public interface ScriptContext extends AutoCloseable {
 
     Value executeAsPromise(Mono<?> operation, String description);
 
+    /**
+     * Executes operation as promise, concurrent operations with the same key are coalesced across all contexts
+     * of the executor and share one subscription, see {@link OperationCoalescer}. Result is delivered to each context
+     * on its own script thread. Operation must emit host values, not values of a polyglot context.
+     * Key null means the operation is not coalesced. By default the operation is executed without coalescing.
+     **/
+    default Value executeAsPromise(Mono<?> operation, String description, Object operationKey) {
+        return executeAsPromise(operation, description);
+    }
+
     Context getContext();
 
+    /**
+     * Wraps host input (maps, lists and values, e.g. a parsed JSON tree) in read-only proxies materialized lazily
+     * on access, so the script does not pay for JSON parsing of the whole input, see {@link ReadOnlyProxies}.
+     **/
+    default Object wrapInput(Object input) {
+        return ReadOnlyProxies.wrap(input);
+    }
+
+    /**
+     * JS intrinsics and globals of the context resolved once and reused by all executions in the context.
+     * By default they are resolved again on each call, implementations should keep one instance per context.
+     **/
+    default ScriptIntrinsics getIntrinsics() {
+        return new ScriptIntrinsics(getContext());
+    }
+
+    /**
+     * Source of the registered script version being executed, null when the script is not executed by id.
+     **/
+    default Source getScriptSource() {
+        return null;
+    }
+
     String getScriptOutput();
 
+    /**
+     * Output of the current execution read on demand. Unlike {@link #getScriptOutput()} the returned supplier
+     * stays valid after the execution ends and the context is closed or reused.
+     * By default the output is copied when the supplier is requested.
+     **/
+    default Supplier<String> getLazyScriptOutput() {
+        String output = getScriptOutput();
+        return () -> output;
+    }
+
+    /**
+     * Emitter of the current execution when executed as flux, null otherwise.
+     **/
+    default ScriptEmitter<?> getEmitter() {
+        return null;
+    }
+
     Scheduler getScheduler();
 
     boolean isClosed();
@@ -6,33 +6,312 @@ import org.graalvm.polyglot.Source;
 import org.graalvm.polyglot.Value;
 import org.graalvm.polyglot.proxy.ProxyExecutable;
 import org.reactivestreams.Subscription;
+import reactor.core.Disposable;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
 import reactor.core.scheduler.Scheduler;
 
-import java.io.ByteArrayOutputStream;
-import java.nio.charset.Charset;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
-// TODO implement Timeout when script is infinite and never ends ({response}) => new Promise(() => "Neverending story")
-// TODO implement Statement limits
 @Slf4j
 class ScriptContextImpl implements ScriptContext {
 
+    /**
+     * Records own properties, prototype and extensibility of the global object and of the builtins reachable from it
+     * (non-enumerable globals, their prototypes and nested objects, hidden function and iterator prototypes).
+     * Returns a function checking that none of them changed, it uses only functions captured by the snapshot.
+     * Internal source, so it does not count against statement limits of the context.
+     **/
+    private static final Source GLOBAL_STATE_SNAPSHOT = Source.newBuilder(AsyncScriptExecutor.JS_LANGUAGE_TYPE,
+            "(function() {"
+                    + " const ownKeys = Reflect.ownKeys, describe = Object.getOwnPropertyDescriptor,"
+                    + " getPrototype = Object.getPrototypeOf, isExtensible = Object.isExtensible, is = Object.is;"
+                    + " const seen = new Set([globalThis]), targets = [globalThis];"
+                    + " const visit = value => {"
+                    + " if (value !== null && (typeof value === 'object' || typeof value === 'function')"
+                    + " && !seen.has(value)) { seen.add(value); targets.push(value); } };"
+                    + " for (const key of ownKeys(globalThis)) { const d = describe(globalThis, key);"
+                    + " if (!d.enumerable && 'value' in d) { visit(d.value); } }"
+                    + " [function* () {}, async function () {}, async function* () {}]"
+                    + " .forEach(f => { visit(getPrototype(f)); visit(f.prototype); });"
+                    + " [[][Symbol.iterator](), new Map()[Symbol.iterator](), new Set()[Symbol.iterator](),"
+                    + " ''[Symbol.iterator]()].forEach(iterator => visit(getPrototype(iterator)));"
+                    + " const entries = [];"
+                    + " for (let i = 0; i < targets.length; i++) {"
+                    + " const target = targets[i], keys = ownKeys(target), descriptors = [];"
+                    + " for (const key of keys) { const d = describe(target, key); descriptors.push(d);"
+                    + " if (target !== globalThis && 'value' in d && (typeof d.value !== 'function'"
+                    + " || describe(d.value, 'prototype') !== undefined)) { visit(d.value); } }"
+                    + " visit(getPrototype(target));"
+                    + " entries.push({ target, keys, descriptors, prototype: getPrototype(target),"
+                    + " extensible: isExtensible(target) }); }"
+                    + " const same = (a, b) => a !== undefined && is(a.value, b.value) && a.get === b.get"
+                    + " && a.set === b.set && a.writable === b.writable && a.enumerable === b.enumerable"
+                    + " && a.configurable === b.configurable;"
+                    + " return function() {"
+                    + " for (let i = 0; i < entries.length; i++) {"
+                    + " const entry = entries[i], keys = ownKeys(entry.target);"
+                    + " if (keys.length !== entry.keys.length || getPrototype(entry.target) !== entry.prototype"
+                    + " || isExtensible(entry.target) !== entry.extensible) { return false; }"
+                    + " for (let j = 0; j < keys.length; j++) {"
+                    + " if (keys[j] !== entry.keys[j] || !same(describe(entry.target, keys[j]), entry.descriptors[j])) {"
+                    + " return false; } } }"
+                    + " return true; }; })()",
+            "global-state-snapshot")
+            .internal(true)
+            .cached(true)
+            .buildLiteral();
+
     private final Context context;
     private final Scheduler scheduler;
-    private final ByteArrayOutputStream scriptOutputStream;
+    private final ScriptOutputBuffer scriptOutput;
+    private final Object reuseKey;
+    private EngineShard engineShard;
+    private final ScriptIntrinsics intrinsics;
+    /** Thread of the script scheduler, context is created on it and only used by it. */
+    private final Thread ownerThread = Thread.currentThread();
     private boolean closed = false;
+    private Source scriptSource;
+
+    /** Global members present after context initiation, anything added later is removed before reuse. */
+    private Set<String> initialGlobals;
+    /** Checks that globals and builtins are unchanged since context initiation, see {@link #GLOBAL_STATE_SNAPSHOT}. */
+    private Value globalStateCheck;
+
+    private volatile ExecutionPhase phase = ExecutionPhase.INITIALIZATION;
+    private long executionStart = System.nanoTime();
+    /** Errors the execution when deadline or statement limit is exceeded, null when execution has no limits. */
+    private Sinks.Empty<Void> limitSignal;
+    private volatile ScriptTimeoutException limitError;
+    private Disposable deadline;
+    /** Emitter of the current streamed execution. */
+    private ScriptEmitter<?> emitter;
+    private volatile int executionCount;
+    /** Output of the current execution handed out to exceptions, frozen when the execution ends. */
+    private LazyScriptOutput executionOutput;
+
+    private StackCapturePolicy stackCapturePolicy = StackCapturePolicy.ALWAYS;
+    private double stackCaptureSampleRate;
+    /** Number of async operations started by the current execution, identifies operation when stack is not captured. */
+    private int operationCount;
 
     /** Map of currently running async operations in this context. These are cancelled if context is closed. */
     private final ConcurrentHashMap<Subscription, PromiseMonoSubscriber> runningOperationMap = new ConcurrentHashMap<>();
 
+    private ScriptMetrics scriptMetrics = ScriptMetrics.NOOP;
+    /** Single-flight of host operations shared by the executor, operations are not coalesced when null. */
+    private OperationCoalescer operationCoalescer;
+    private final OperationQuota operationQuota = new OperationQuota(this);
+    private Consumer<ScriptContextImpl> closeListener;
+
     private String transactionId = UUID.randomUUID().toString();
 
-    public ScriptContextImpl(Context context, Scheduler scheduler, ByteArrayOutputStream outputStream) {
+    public ScriptContextImpl(Context context, Scheduler scheduler, ScriptOutputBuffer scriptOutput) {
+        this(context, scheduler, scriptOutput, null);
+    }
+
+    public ScriptContextImpl(Context context, Scheduler scheduler, ScriptOutputBuffer scriptOutput, Object reuseKey) {
         this.context = context;
         this.scheduler = scheduler;
-        this.scriptOutputStream = outputStream;
+        this.scriptOutput = scriptOutput;
+        this.reuseKey = reuseKey;
+        this.intrinsics = new ScriptIntrinsics(context);
+    }
+
+    boolean isOwnerThread() {
+        return Thread.currentThread() == ownerThread;
+    }
+
+    Object getReuseKey() {
+        return reuseKey;
+    }
+
+    void setEngineShard(EngineShard engineShard) {
+        this.engineShard = engineShard;
+    }
+
+    /** Shard of the engine the context was created on, null when not created by the executor. */
+    EngineShard getEngineShard() {
+        return engineShard;
+    }
+
+    /**
+     * Marks start of a new execution in this context.
+     **/
+    int startExecution(long startNanos, boolean limited) {
+        this.executionStart = startNanos;
+        this.phase = ExecutionPhase.INITIALIZATION;
+        this.limitError = null;
+        this.limitSignal = limited ? Sinks.empty() : null;
+        scriptOutput.startExecution(transactionId);
+        this.operationCount = 0;
+        return ++executionCount;
+    }
+
+    /**
+     * Fails and cancels the execution which exceeded its deadline. Ignored if the context already moved on to
+     * another execution.
+     **/
+    void deadlineExceeded(int execution, Duration timeout) {
+        if (execution != executionCount || closed) {
+            return;
+        }
+        log.debug("Script {} exceeded execution timeout in phase {}", transactionId, phase);
+        recordLimitExceeded("Execution timeout of " + timeout.toMillis() + " ms exceeded");
+        signalLimitExceeded();
+        forceClose();
+    }
+
+    void finishExecution() {
+        if (deadline != null) {
+            deadline.dispose();
+            deadline = null;
+        }
+        emitter = null;
+    }
+
+    void setEmitter(ScriptEmitter<?> emitter) {
+        this.emitter = emitter;
+    }
+
+    @Override
+    public ScriptEmitter<?> getEmitter() {
+        return emitter;
+    }
+
+    void setStackCapture(StackCapturePolicy stackCapturePolicy, double sampleRate) {
+        this.stackCapturePolicy = stackCapturePolicy;
+        this.stackCaptureSampleRate = sampleRate;
+    }
+
+    void setScriptMetrics(ScriptMetrics scriptMetrics) {
+        this.scriptMetrics = scriptMetrics;
+    }
+
+    ScriptMetrics getScriptMetrics() {
+        return scriptMetrics;
+    }
+
+    /**
+     * Sets limits of host operations of the current execution, called after {@link #startExecution(long, boolean)}.
+     **/
+    void setOperationLimits(OperationLimits operationLimits) {
+        operationQuota.reset(operationLimits);
+    }
+
+    void setOperationCoalescer(OperationCoalescer operationCoalescer) {
+        this.operationCoalescer = operationCoalescer;
+    }
+
+    /** Called once after the context is closed. */
+    void setCloseListener(Consumer<ScriptContextImpl> closeListener) {
+        this.closeListener = closeListener;
+    }
+
+    int getRunningOperationCount() {
+        return runningOperationMap.size();
+    }
+
+    void setDeadline(Disposable deadline) {
+        this.deadline = deadline;
+    }
+
+    ExecutionPhase getPhase() {
+        return phase;
+    }
+
+    void setPhase(ExecutionPhase phase) {
+        this.phase = phase;
+    }
+
+    Duration getElapsed() {
+        return Duration.ofNanos(System.nanoTime() - executionStart);
+    }
+
+    Sinks.Empty<Void> getLimitSignal() {
+        return limitSignal;
+    }
+
+    /** Error of exceeded limit, null if no limit was exceeded by the current execution. */
+    ScriptTimeoutException getLimitError() {
+        return limitError;
+    }
+
+    /**
+     * Records exceeded limit of the current execution. Only the first exceeded limit is recorded.
+     **/
+    synchronized ScriptTimeoutException recordLimitExceeded(String reason) {
+        if (limitError == null) {
+            limitError = new ScriptTimeoutException(this, reason, phase, getElapsed());
+        }
+        return limitError;
+    }
+
+    /**
+     * Fails the current execution with the recorded limit error.
+     **/
+    void signalLimitExceeded() {
+        Sinks.Empty<Void> signal = limitSignal;
+        ScriptTimeoutException error = limitError;
+        if (signal != null && error != null) {
+            signal.tryEmitError(error);
+        }
+    }
+
+    /**
+     * Remembers global members created by context initiation and the state of globals and builtins.
+     * Called before first evaluation of a reusable context.
+     **/
+    void snapshotGlobals() {
+        this.initialGlobals = new HashSet<>(intrinsics.getBindings().getMemberKeys());
+        this.globalStateCheck = context.eval(GLOBAL_STATE_SNAPSHOT);
+    }
+
+    /**
+     * Prepares context for next execution. Removes globals created by the previous script, clears output
+     * and resets resource limits. Returns false if the context is not in a reusable state: global which can not
+     * be removed (top level let, const, class or var declaration), reassigned or deleted global or modified builtin
+     * or prototype.
+     **/
+    boolean resetForReuse() {
+        if (closed || initialGlobals == null || !runningOperationMap.isEmpty()) {
+            return false;
+        }
+
+        Value bindings = intrinsics.getBindings();
+        intrinsics.clearGlobals();
+        for (String key : bindings.getMemberKeys()) {
+            if (!initialGlobals.contains(key) && !removeGlobal(bindings, key)) {
+                log.debug("Global {} can not be removed, context {} will not be reused", key, transactionId);
+                return false;
+            }
+        }
+        if (!globalStateCheck.execute().asBoolean()) {
+            log.debug("Globals or builtins were modified, context {} will not be reused", transactionId);
+            return false;
+        }
+
+        context.resetLimits();
+        freezeExecutionOutput();
+        scriptOutput.reset();
+        transactionId = UUID.randomUUID().toString();
+        return true;
+    }
+
+    private static boolean removeGlobal(Value bindings, String key) {
+        try {
+            return bindings.removeMember(key);
+        } catch (UnsupportedOperationException e) {
+            // lexical declarations are exposed by the bindings but can not be removed
+            return false;
+        }
     }
 
     @Override
@@ -40,6 +319,25 @@ class ScriptContextImpl implements ScriptContext {
         return context;
     }
 
+    @Override
+    public Object wrapInput(Object input) {
+        return ReadOnlyProxies.wrap(input);
+    }
+
+    @Override
+    public ScriptIntrinsics getIntrinsics() {
+        return intrinsics;
+    }
+
+    @Override
+    public Source getScriptSource() {
+        return scriptSource;
+    }
+
+    void setScriptSource(Source scriptSource) {
+        this.scriptSource = scriptSource;
+    }
+
     @Override
     public boolean isClosed() {
         return closed;
@@ -70,31 +368,67 @@ class ScriptContextImpl implements ScriptContext {
         return transactionId;
     }
 
+    @Override
+    public Value executeAsPromise(Mono<?> operation, String description, Object operationKey) {
+        if (operationKey == null || operationCoalescer == null) {
+            return executeAsPromise(operation, description);
+        }
+        return executeAsPromise(operationCoalescer.coalesce(operationKey, operation), description);
+    }
+
     @Override
     public Value executeAsPromise(Mono<?> operation, String description) {
-        String currentJsStack = ScriptUtils.getCurrentJsStack(context);
-        return ScriptUtils.getGlobalPromise(context).newInstance((ProxyExecutable) arguments -> {
+        int operationIndex = ++operationCount;
+        String currentJsStack = captureJsStack();
+        Mono<?> limitedOperation = operationQuota.limit(operation, description);
+        return intrinsics.getPromise().newInstance((ProxyExecutable) arguments -> {
             Value resolve = arguments[0];
             Value reject = arguments[1];
 
             PromiseMonoSubscriber subscriber = new PromiseMonoSubscriber(this, resolve, reject,
-                    description, currentJsStack);
-
-            // Operation result needs to be published on a thread that executed the script.
-            // This ensures that one particular script code is always executed on the same thread
-            // and we don't need to manage context.enter and context.leave.
-            operation
-                    .publishOn(scheduler)
-                    .subscribe(subscriber);
+                    description, currentJsStack, operationIndex);
+
+            // subscriber delivers the result on the script thread
+            limitedOperation.subscribe(subscriber);
             return null;
         });
     }
 
+    /**
+     * Captures JS stack according to the stack capture policy. Returns null if the stack was not captured.
+     **/
+    private String captureJsStack() {
+        switch (stackCapturePolicy) {
+            case ALWAYS:
+                return ScriptUtils.getCurrentJsStack(this);
+            case SAMPLED:
+                return ThreadLocalRandom.current().nextDouble() < stackCaptureSampleRate
+                        ? ScriptUtils.getCurrentJsStack(this)
+                        : null;
+            case NEVER:
+                return "";
+            default:
+                return null;
+        }
+    }
+
     private synchronized void close(boolean force) {
         if (!closed) {
             log.trace("Closing context, force: {}", force);
             this.closed = true;
-            this.context.close(force);
+            try {
+                this.context.close(force);
+            } finally {
+                // notified once the context is closed, so the listener can close its engine
+                if (closeListener != null) {
+                    closeListener.accept(this);
+                }
+            }
+            if (executionOutput != null) {
+                // kept frozen for exceptions created after close
+                executionOutput.freeze();
+            }
+            scriptOutput.release();
             if (!runningOperationMap.isEmpty()) {
                 runningOperationMap.forEachEntry(1, subscriptionStringEntry -> {
                     subscriptionStringEntry.getValue().cancel();
@@ -105,8 +439,31 @@ class ScriptContextImpl implements ScriptContext {
     }
 
     @Override
-    public String getScriptOutput() {
-        return scriptOutputStream.toString(Charset.defaultCharset());
+    public synchronized String getScriptOutput() {
+        if (closed) {
+            // buffer might be already recycled
+            return executionOutput != null ? executionOutput.get() : "";
+        }
+        return scriptOutput.getOutput();
+    }
+
+    @Override
+    public synchronized Supplier<String> getLazyScriptOutput() {
+        if (closed) {
+            // buffer might be already recycled
+            return executionOutput != null ? executionOutput : () -> "";
+        }
+        if (executionOutput == null) {
+            executionOutput = new LazyScriptOutput(scriptOutput);
+        }
+        return executionOutput;
+    }
+
+    private synchronized void freezeExecutionOutput() {
+        if (executionOutput != null) {
+            executionOutput.freeze();
+            executionOutput = null;
+        }
     }
 
     protected void registerSubscriber(Subscription subscription, PromiseMonoSubscriber promiseMonoSubscriber) {
@@ -0,0 +1,143 @@
+package net.voldrich.graal.async.script;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.scheduler.Scheduler;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Objects;
+
+/**
+ * Pool of idle script contexts owned by one script scheduler.
+ * Contexts are acquired and released on the scheduler thread, so the context is never used by another thread.
+ * Most recently released contexts are at the head of the queue, eviction happens from the tail.
+ **/
+@Slf4j
+class ScriptContextPool {
+
+    private static final MemoryMXBean MEMORY_MX_BEAN = ManagementFactory.getMemoryMXBean();
+
+    private final Scheduler scheduler;
+
+    private final ContextPoolSettings settings;
+
+    private final ArrayDeque<PooledContext> idleContexts = new ArrayDeque<>();
+
+    ScriptContextPool(Scheduler scheduler, ContextPoolSettings settings) {
+        this.scheduler = scheduler;
+        this.settings = settings;
+    }
+
+    Scheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Takes idle context with the reuse key created on the engine of the shard.
+     **/
+    synchronized ScriptContextImpl acquire(Object reuseKey, EngineShard engineShard) {
+        Iterator<PooledContext> iterator = idleContexts.iterator();
+        while (iterator.hasNext()) {
+            ScriptContextImpl scriptContext = iterator.next().scriptContext;
+            if (Objects.equals(reuseKey, scriptContext.getReuseKey()) && scriptContext.getEngineShard() == engineShard) {
+                iterator.remove();
+                return scriptContext;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Resets the context and returns it to the pool.
+     * Returns false if the context can not be reused, caller is then responsible for closing it.
+     **/
+    boolean release(ScriptContextImpl scriptContext, ScriptHandler<?> scriptHandler) {
+        EngineShard engineShard = scriptContext.getEngineShard();
+        if (scriptContext.getReuseKey() == null || isHeapUnderPressure()
+                || (engineShard != null && engineShard.isRetired())) {
+            return false;
+        }
+
+        try {
+            if (!scriptContext.resetForReuse() || !scriptHandler.resetContext(scriptContext)) {
+                return false;
+            }
+        } catch (Exception e) {
+            log.debug("Failed to reset context {}: {}", scriptContext.getTransactionId(), e.getMessage());
+            return false;
+        }
+
+        PooledContext evicted = null;
+        synchronized (this) {
+            idleContexts.addFirst(new PooledContext(scriptContext, System.nanoTime()));
+            if (idleContexts.size() > settings.getMaxIdleContexts()) {
+                evicted = idleContexts.removeLast();
+            }
+        }
+        if (evicted != null) {
+            evicted.scriptContext.close();
+        }
+        return true;
+    }
+
+    /**
+     * Closes contexts idle for longer than allowed, or all of them when heap is under pressure.
+     * Contexts of retired engine shards are closed too, so the shard engine can be closed.
+     **/
+    void evictIdle() {
+        boolean heapUnderPressure = isHeapUnderPressure();
+        long idleLimit = System.nanoTime() - settings.getMaxIdleTime().toNanos();
+        ArrayDeque<PooledContext> evicted = new ArrayDeque<>();
+        synchronized (this) {
+            while (!idleContexts.isEmpty()
+                    && (heapUnderPressure || idleContexts.peekLast().releasedAt - idleLimit < 0)) {
+                evicted.add(idleContexts.removeLast());
+            }
+            Iterator<PooledContext> iterator = idleContexts.iterator();
+            while (iterator.hasNext()) {
+                PooledContext pooledContext = iterator.next();
+                EngineShard engineShard = pooledContext.scriptContext.getEngineShard();
+                if (engineShard != null && engineShard.isRetired()) {
+                    iterator.remove();
+                    evicted.add(pooledContext);
+                }
+            }
+        }
+        if (!evicted.isEmpty()) {
+            log.debug("Evicting {} idle contexts, heap under pressure: {}", evicted.size(), heapUnderPressure);
+            evicted.forEach(pooledContext -> pooledContext.scriptContext.close());
+        }
+    }
+
+    void clear() {
+        ArrayDeque<PooledContext> evicted;
+        synchronized (this) {
+            evicted = new ArrayDeque<>(idleContexts);
+            idleContexts.clear();
+        }
+        evicted.forEach(pooledContext -> pooledContext.scriptContext.close());
+    }
+
+    synchronized int size() {
+        return idleContexts.size();
+    }
+
+    private boolean isHeapUnderPressure() {
+        MemoryUsage heapUsage = MEMORY_MX_BEAN.getHeapMemoryUsage();
+        return heapUsage.getMax() > 0
+                && (double) heapUsage.getUsed() / heapUsage.getMax() > settings.getMaxHeapUsage();
+    }
+
+    private static final class PooledContext {
+        private final ScriptContextImpl scriptContext;
+        private final long releasedAt;
+
+        private PooledContext(ScriptContextImpl scriptContext, long releasedAt) {
+            this.scriptContext = scriptContext;
+            this.releasedAt = releasedAt;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package net.voldrich.graal.async.script;
+
+import org.graalvm.polyglot.Value;
+import org.graalvm.polyglot.proxy.ProxyExecutable;
+import reactor.core.publisher.FluxSink;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Emits items of a streamed script execution, see {@link AsyncScriptExecutor#executeScriptAsFlux(ScriptHandler)}.
+ * Script calls the emitter as a function, {@code await emit(item)} returns once the subscriber requests more items,
+ * so a slow subscriber pauses the script instead of items being buffered.
+ * Script can also return an async iterator (async generator), which is pulled only on demand.
+ * Script is at most one buffered item ahead of the subscriber, unless it emits again without awaiting the previous
+ * emit. Promises of all such emits are resolved together once the subscriber requests more items.
+ * All methods except {@link #requested(long)} are called on the script thread.
+ **/
+public final class ScriptEmitter<T> implements ProxyExecutable {
+
+    private final ScriptContextImpl scriptContextImpl;
+    private final ScriptHandler<T> scriptHandler;
+    private final FluxSink<T> sink;
+
+    /** Resolve functions of the promises returned to a script paused by missing demand. */
+    private final List<Value> pendingResumes = new ArrayList<>();
+    private Value iterator;
+    private boolean pulling;
+    private boolean done;
+
+    ScriptEmitter(ScriptContextImpl scriptContextImpl, ScriptHandler<T> scriptHandler, FluxSink<T> sink) {
+        this.scriptContextImpl = scriptContextImpl;
+        this.scriptHandler = scriptHandler;
+        this.sink = sink;
+    }
+
+    /**
+     * Emits the first argument and returns a resolved promise if the subscriber requested the item.
+     * Otherwise the item is buffered and the promise is resolved once the subscriber requests more items.
+     **/
+    @Override
+    public Object execute(Value... arguments) {
+        if (done) {
+            throw new IllegalStateException("Script stream is already finished");
+        }
+        boolean requested = sink.requestedFromDownstream() > 0;
+        emit(arguments.length > 0 ? arguments[0] : null);
+        Value promise = scriptContextImpl.getIntrinsics().getPromise();
+        if (requested) {
+            return promise.invokeMember("resolve");
+        }
+        return promise.newInstance((ProxyExecutable) executorArguments -> {
+            pendingResumes.add(executorArguments[0]);
+            return null;
+        });
+    }
+
+    /**
+     * Starts streaming the value returned by the script evaluation.
+     * A promise completes the stream once settled, an async iterator is pulled on demand.
+     * A value (or resolved value) other than null or undefined is emitted as the last item.
+     **/
+    void start(Value response) {
+        if (AsyncScriptExecutor.isThenable(response)) {
+            settle(response, this::finish);
+        } else if (response != null && response.hasMembers() && response.canInvokeMember("next")) {
+            iterator = response;
+            pull();
+        } else {
+            finish(response);
+        }
+    }
+
+    /**
+     * Demand of the subscriber increased, called on the requesting thread before buffered items are drained.
+     * Script is resumed by a scheduled task, so it sees demand left after the buffered items.
+     **/
+    void requested(long count) {
+        scriptContextImpl.getScheduler().schedule(this::resume);
+    }
+
+    void fail(Object error) {
+        if (!done) {
+            done = true;
+            sink.error(AsyncScriptExecutor.convertError(error, scriptContextImpl));
+        }
+    }
+
+    private void resume() {
+        if (done || scriptContextImpl.isClosed() || sink.requestedFromDownstream() == 0) {
+            return;
+        }
+        try {
+            if (!pendingResumes.isEmpty()) {
+                List<Value> resumes = new ArrayList<>(pendingResumes);
+                pendingResumes.clear();
+                for (Value resolve : resumes) {
+                    resolve.executeVoid();
+                }
+            } else if (iterator != null) {
+                pull();
+            }
+        } catch (Exception e) {
+            fail(e);
+        }
+    }
+
+    private void pull() {
+        // synchronous iterators are pulled in a loop, async ones continue from the settled promise
+        while (!pulling && !done && sink.requestedFromDownstream() > 0) {
+            pulling = true;
+            Value result = iterator.invokeMember("next");
+            if (AsyncScriptExecutor.isThenable(result)) {
+                settle(result, value -> {
+                    iterated(value);
+                    pull();
+                });
+                return;
+            }
+            iterated(result);
+        }
+    }
+
+    private void iterated(Value result) {
+        pulling = false;
+        if (result.getMember("done").asBoolean()) {
+            finish(null);
+        } else {
+            emit(result.getMember("value"));
+        }
+    }
+
+    private void emit(Value value) {
+        long transformationStart = System.nanoTime();
+        T item = scriptHandler.transformScriptResponse(scriptContextImpl, value != null ? value.as(Object.class) : null);
+        scriptContextImpl.getScriptMetrics().recordPhase(ScriptMetrics.Phase.TRANSFORMATION,
+                System.nanoTime() - transformationStart, true);
+        sink.next(item);
+    }
+
+    private void finish(Value value) {
+        if (done) {
+            return;
+        }
+        if (value != null && !value.isNull()) {
+            emit(value);
+        }
+        done = true;
+        sink.complete();
+    }
+
+    private void settle(Value promise, Consumer<Value> onSuccess) {
+        scriptContextImpl.getIntrinsics().getPromiseBridge().executeVoid(promise, (ProxyExecutable) arguments -> {
+            try {
+                if (arguments[0].asBoolean()) {
+                    onSuccess.accept(arguments[1]);
+                } else {
+                    fail(arguments[1].as(Object.class));
+                }
+            } catch (Exception e) {
+                fail(e);
+            }
+            return null;
+        });
+    }
+}
@@ -1,11 +1,16 @@
 package net.voldrich.graal.async.script;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 
+import java.util.function.Supplier;
+
 @Getter
 public class ScriptExecutionException extends RuntimeException {
 
-    private final String scriptOutput;
+    /** Output is copied only when it is read, see {@link ScriptContext#getLazyScriptOutput()}. */
+    @Getter(AccessLevel.NONE)
+    private final transient Supplier<String> scriptOutput;
 
     private final String source;
 
@@ -15,14 +20,21 @@ public class ScriptExecutionException extends RuntimeException {
         super(message);
         this.source = "unknown";
         this.stack = "";
-        this.scriptOutput = scriptContext.getScriptOutput();
+        this.scriptOutput = scriptContext.getLazyScriptOutput();
     }
 
     public ScriptExecutionException(ScriptContext scriptContext, String message, String stack) {
         super(message);
         this.source = "script";
         this.stack = stack;
-        this.scriptOutput = scriptContext.getScriptOutput();
+        this.scriptOutput = scriptContext.getLazyScriptOutput();
+    }
+
+    protected ScriptExecutionException(ScriptContext scriptContext, String message, String source, String stack) {
+        super(message);
+        this.source = source;
+        this.stack = stack;
+        this.scriptOutput = scriptContext.getLazyScriptOutput();
     }
 
     public ScriptExecutionException(ScriptContext scriptContext, Throwable hostException) {
@@ -33,7 +45,10 @@ public class ScriptExecutionException extends RuntimeException {
         super(hostException);
         this.source = "host";
         this.stack = stack;
-        this.scriptOutput = scriptContext.getScriptOutput();
+        this.scriptOutput = scriptContext.getLazyScriptOutput();
     }
 
+    public String getScriptOutput() {
+        return scriptOutput != null ? scriptOutput.get() : "";
+    }
 }
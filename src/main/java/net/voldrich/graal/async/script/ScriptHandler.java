@@ -1,8 +1,10 @@
 package net.voldrich.graal.async.script;
 
 import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Source;
 import org.graalvm.polyglot.Value;
 
+import java.time.Duration;
 import java.time.ZoneId;
 
 /**
@@ -32,4 +34,88 @@ public interface ScriptHandler<T> {
      * Transform value returned by the script into T
      **/
     T transformScriptResponse(ScriptContext scriptContext, Object value);
+
+    /**
+     * Maximum duration of one execution, measured from context acquisition until the response is transformed.
+     * Execution exceeding it is cancelled and fails with {@link ScriptTimeoutException}.
+     * Null means the executor default is used.
+     **/
+    default Duration getExecutionTimeout() {
+        return null;
+    }
+
+    /**
+     * Maximum number of statements executed in one context. Zero means the executor default is used.
+     **/
+    default long getStatementLimit() {
+        return 0;
+    }
+
+    /**
+     * Limits of async host operations started by one execution, see {@link OperationLimits}.
+     * Null means the executor default is used.
+     **/
+    default OperationLimits getOperationLimits() {
+        return null;
+    }
+
+    /**
+     * Priority lane the execution waits in for its script thread, see {@link ExecutionPriority}.
+     **/
+    default ExecutionPriority getPriority() {
+        return ExecutionPriority.NORMAL;
+    }
+
+    /**
+     * Tenant sharing the priority lane fairly with other tenants, see {@link ScriptSchedulers#setTenantWeights}.
+     * Null means executions of all handlers without a tenant share one turn.
+     **/
+    default Object getTenantKey() {
+        return null;
+    }
+
+    /**
+     * Key routing the execution to an engine shard, e.g. tenant id, see {@link EngineShards}.
+     * Null means the script id is used when executed by id, otherwise the default shard is used.
+     **/
+    default Object getShardKey() {
+        return null;
+    }
+
+    /**
+     * Key of the script input when the script is deterministic, its transformed result is then cached by the executor
+     * if result cache is enabled, see {@link ResultCacheSettings}. Key must identify the input (e.g. the input itself
+     * or its content hash), results are cached per handler class and script: the script version when executed by id,
+     * otherwise the handler {@link #getSource()}. Handlers building the script in other way must include it in the key.
+     * Null means the result is not cached.
+     **/
+    default Object getResultCacheKey() {
+        return null;
+    }
+
+    /**
+     * Source evaluated by the handler, null when the handler evaluates the registered script version
+     * or builds its scripts in other way.
+     **/
+    default Source getSource() {
+        return null;
+    }
+
+    /**
+     * Key of a reusable context. If context pooling is enabled and the key is not null, contexts are pooled
+     * and reused for handlers returning an equal key. Such handlers must build and initiate context the same way,
+     * {@link #initiateContext(ScriptContext)} is then called only once per context.
+     **/
+    default Object getContextReuseKey() {
+        return null;
+    }
+
+    /**
+     * Reset or validate state left in a reusable context by the previous execution.
+     * Globals created by the script are already removed and globals and builtins are verified to be unchanged,
+     * state kept by the handler bindings is left to the handler. Return false if the context must not be reused.
+     **/
+    default boolean resetContext(ScriptContext scriptContext) {
+        return true;
+    }
 }
@@ -0,0 +1,128 @@
+package net.voldrich.graal.async.script;
+
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Source;
+import org.graalvm.polyglot.Value;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static net.voldrich.graal.async.script.AsyncScriptExecutor.JS_LANGUAGE_TYPE;
+
+/**
+ * Handles of JS intrinsics and globals resolved once per context.
+ * Values are bound to the context, instance must be used only by the thread executing the context.
+ **/
+public class ScriptIntrinsics {
+
+    /** Subscribes single settle callback to a thenable, called with (true, value) or (false, error). */
+    private static final Source PROMISE_BRIDGE = Source.newBuilder(JS_LANGUAGE_TYPE,
+            "(function(promise, settle) {"
+                    + " promise.then(function(value) { settle(true, value); },"
+                    + " function(error) { settle(false, error); });"
+                    + " })",
+            "promise-bridge")
+            .cached(true)
+            .buildLiteral();
+
+    private final Context context;
+
+    private Value bindings;
+    private Value json;
+    private Value jsonParse;
+    private Value jsonStringify;
+    private Value promise;
+    private Value error;
+    private Value promiseBridge;
+    private ScriptJsonWriter jsonWriter;
+
+    /** Globals resolved by name, typically bindings registered by the script handler. */
+    private final Map<String, Value> globals = new HashMap<>();
+
+    ScriptIntrinsics(Context context) {
+        this.context = context;
+    }
+
+    public Value getBindings() {
+        if (bindings == null) {
+            bindings = context.getBindings(JS_LANGUAGE_TYPE);
+        }
+        return bindings;
+    }
+
+    public Value getJSON() {
+        if (json == null) {
+            json = getBindings().getMember("JSON");
+        }
+        return json;
+    }
+
+    public Value getJsonParse() {
+        if (jsonParse == null) {
+            jsonParse = getJSON().getMember("parse");
+        }
+        return jsonParse;
+    }
+
+    public Value getJsonStringify() {
+        if (jsonStringify == null) {
+            jsonStringify = getJSON().getMember("stringify");
+        }
+        return jsonStringify;
+    }
+
+    public Value getPromise() {
+        if (promise == null) {
+            promise = getBindings().getMember("Promise");
+        }
+        return promise;
+    }
+
+    public Value getError() {
+        if (error == null) {
+            error = getBindings().getMember("Error");
+        }
+        return error;
+    }
+
+    /**
+     * Function(thenable, settle) subscribing settle callback to both outcomes of the thenable.
+     **/
+    public Value getPromiseBridge() {
+        if (promiseBridge == null) {
+            promiseBridge = context.eval(PROMISE_BRIDGE);
+        }
+        return promiseBridge;
+    }
+
+    /**
+     * JSON writer reused by all serializations in the context.
+     **/
+    public ScriptJsonWriter getJsonWriter() {
+        if (jsonWriter == null) {
+            jsonWriter = new ScriptJsonWriter();
+        }
+        return jsonWriter;
+    }
+
+    /**
+     * Global member resolved on first access. Missing members are not cached.
+     **/
+    public Value getGlobal(String name) {
+        Value value = globals.get(name);
+        if (value == null) {
+            value = getBindings().getMember(name);
+            if (value != null) {
+                globals.put(name, value);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Forgets resolved globals, called when globals of a reused context are reset.
+     **/
+    void clearGlobals() {
+        globals.clear();
+    }
+}
@@ -0,0 +1,329 @@
+package net.voldrich.graal.async.script;
+
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Value;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static net.voldrich.graal.async.script.AsyncScriptExecutor.JS_LANGUAGE_TYPE;
+
+/**
+ * Serializes a script value to UTF-8 JSON with the semantics of {@code JSON.stringify}, without building
+ * an intermediate string. Value graph is walked from java and written through a fixed size buffer, or into
+ * a growing buffer when the JSON is returned as bytes.
+ * Instance is reusable but not thread safe, it must be used only by the thread executing the context of the value.
+ **/
+public final class ScriptJsonWriter {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+
+    private final byte[] reusableBuffer = new byte[BUFFER_SIZE];
+    private byte[] buffer = reusableBuffer;
+    private int position;
+    /** Null when writing to bytes, the buffer grows instead of being flushed. */
+    private OutputStream out;
+
+    /** JS undefined of the context of the last written value, null and undefined are both null in polyglot API. */
+    private Context undefinedContext;
+    private Value undefined;
+
+    /** Key of the object member written before its value, unless the value is omitted. */
+    private String pendingKey;
+    private boolean pendingSeparator;
+
+    /** Objects and arrays being serialized, used to detect cycles. */
+    private final List<Value> ancestors = new ArrayList<>();
+
+    /**
+     * Writes value as JSON to the output stream. Returns false and writes nothing if the value is not
+     * serializable (undefined, function or symbol), for which {@code JSON.stringify} returns undefined.
+     * Fails with {@link IllegalArgumentException} if the value contains a cycle.
+     **/
+    public boolean write(Value value, OutputStream out) throws IOException {
+        this.out = out;
+        try {
+            boolean written = writeValue(value, "", true);
+            flush();
+            return written;
+        } finally {
+            reset();
+        }
+    }
+
+    /**
+     * JSON of the value as UTF-8 bytes, copied once from the buffer to an array of the exact size.
+     * Returns null if the value is not serializable, fails as {@link #write(Value, OutputStream)}.
+     **/
+    public byte[] writeToBytes(Value value) {
+        try {
+            return writeValue(value, "", true) ? Arrays.copyOf(buffer, position) : null;
+        } catch (IOException e) {
+            // not thrown without an output stream
+            throw new UncheckedIOException(e);
+        } finally {
+            reset();
+        }
+    }
+
+    private void reset() {
+        out = null;
+        buffer = reusableBuffer;
+        position = 0;
+        pendingKey = null;
+        ancestors.clear();
+    }
+
+    /**
+     * Writes the value preceded by the pending member key, returns false if the value is not serializable.
+     * Each value is classified once, primitives first as they are the most common.
+     **/
+    private boolean writeValue(Value value, String key, boolean convert) throws IOException {
+        if (value == null) {
+            beginValue();
+            writeAscii("null");
+        } else if (value.isString()) {
+            beginValue();
+            writeString(value.asString());
+        } else if (value.isNumber()) {
+            beginValue();
+            writeNumber(value);
+        } else if (value.isBoolean()) {
+            beginValue();
+            writeAscii(value.asBoolean() ? "true" : "false");
+        } else if (value.isNull()) {
+            if (isUndefined(value)) {
+                return false;
+            }
+            beginValue();
+            writeAscii("null");
+        } else if (value.canExecute()) {
+            return false;
+        } else if (convert && value.hasMembers() && value.canInvokeMember("toJSON")) {
+            return writeValue(value.invokeMember("toJSON", key), key, false);
+        } else if (value.hasArrayElements()) {
+            beginValue();
+            enter(value);
+            writeArray(value);
+            ancestors.remove(ancestors.size() - 1);
+        } else if (value.hasMembers()) {
+            beginValue();
+            enter(value);
+            writeObject(value);
+            ancestors.remove(ancestors.size() - 1);
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Writes the key of the member being serialized, keys of omitted members are never written.
+     **/
+    private void beginValue() throws IOException {
+        if (pendingKey != null) {
+            String key = pendingKey;
+            pendingKey = null;
+            if (pendingSeparator) {
+                writeByte(',');
+            }
+            writeString(key);
+            writeByte(':');
+        }
+    }
+
+    private void writeArray(Value array) throws IOException {
+        writeByte('[');
+        long size = array.getArraySize();
+        for (long index = 0; index < size; index++) {
+            if (index > 0) {
+                writeByte(',');
+            }
+            // values not serializable in an array are written as null
+            if (!writeValue(array.getArrayElement(index), Long.toString(index), true)) {
+                writeAscii("null");
+            }
+        }
+        writeByte(']');
+    }
+
+    private void writeObject(Value object) throws IOException {
+        writeByte('{');
+        boolean first = true;
+        for (String key : object.getMemberKeys()) {
+            pendingKey = key;
+            pendingSeparator = !first;
+            Value member = object.getMember(key);
+            // members which are missing or not serializable are omitted
+            if (member != null && writeValue(member, key, true)) {
+                first = false;
+            }
+            pendingKey = null;
+        }
+        writeByte('}');
+    }
+
+    private boolean isUndefined(Value value) {
+        Context context = value.getContext();
+        if (context == null) {
+            // host null
+            return false;
+        }
+        if (context != undefinedContext) {
+            undefined = context.getBindings(JS_LANGUAGE_TYPE).getMember("undefined");
+            undefinedContext = context;
+        }
+        return undefined.equals(value);
+    }
+
+    private void enter(Value value) {
+        for (Value ancestor : ancestors) {
+            if (ancestor.equals(value)) {
+                throw new IllegalArgumentException("Converting circular structure to JSON");
+            }
+        }
+        ancestors.add(value);
+    }
+
+    private void writeNumber(Value value) throws IOException {
+        if (value.fitsInLong()) {
+            writeAscii(Long.toString(value.asLong()));
+        } else {
+            writeAscii(formatDouble(value.asDouble()));
+        }
+    }
+
+    /**
+     * Formats the double as JS Number::toString, shortest digits of the java representation are reused.
+     **/
+    static String formatDouble(double number) {
+        if (Double.isNaN(number) || Double.isInfinite(number)) {
+            return "null";
+        }
+        if (number == 0) {
+            return "0";
+        }
+        BigDecimal decimal = new BigDecimal(Double.toString(number)).stripTrailingZeros();
+        String digits = decimal.unscaledValue().abs().toString();
+        int k = digits.length();
+        int n = k - decimal.scale();
+        StringBuilder sb = new StringBuilder(k + 8);
+        if (number < 0) {
+            sb.append('-');
+        }
+        if (k <= n && n <= 21) {
+            sb.append(digits);
+            for (int i = k; i < n; i++) {
+                sb.append('0');
+            }
+        } else if (0 < n && n <= 21) {
+            sb.append(digits, 0, n).append('.').append(digits, n, k);
+        } else if (-6 < n && n <= 0) {
+            sb.append("0.");
+            for (int i = n; i < 0; i++) {
+                sb.append('0');
+            }
+            sb.append(digits);
+        } else {
+            sb.append(digits.charAt(0));
+            if (k > 1) {
+                sb.append('.').append(digits, 1, k);
+            }
+            sb.append('e').append(n - 1 >= 0 ? '+' : '-').append(Math.abs(n - 1));
+        }
+        return sb.toString();
+    }
+
+    private void writeString(String value) throws IOException {
+        writeByte('"');
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x20 && c < 0x80) {
+                if (c == '"' || c == '\\') {
+                    writeByte('\\');
+                }
+                writeByte(c);
+            } else if (c < 0x20) {
+                writeControl(c);
+            } else if (c < 0x800) {
+                ensureCapacity(2);
+                buffer[position++] = (byte) (0xc0 | (c >> 6));
+                buffer[position++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                ensureCapacity(4);
+                buffer[position++] = (byte) (0xf0 | (codePoint >> 18));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                buffer[position++] = (byte) (0x80 | (codePoint & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                // lone surrogates are escaped, as by well-formed JSON.stringify
+                writeUnicodeEscape(c);
+            } else {
+                ensureCapacity(3);
+                buffer[position++] = (byte) (0xe0 | (c >> 12));
+                buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                buffer[position++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+        writeByte('"');
+    }
+
+    private void writeControl(char c) throws IOException {
+        switch (c) {
+            case '\b': writeAscii("\\b"); break;
+            case '\f': writeAscii("\\f"); break;
+            case '\n': writeAscii("\\n"); break;
+            case '\r': writeAscii("\\r"); break;
+            case '\t': writeAscii("\\t"); break;
+            default: writeUnicodeEscape(c);
+        }
+    }
+
+    private void writeUnicodeEscape(char c) throws IOException {
+        ensureCapacity(6);
+        buffer[position++] = '\\';
+        buffer[position++] = 'u';
+        buffer[position++] = HEX[(c >> 12) & 0xf];
+        buffer[position++] = HEX[(c >> 8) & 0xf];
+        buffer[position++] = HEX[(c >> 4) & 0xf];
+        buffer[position++] = HEX[c & 0xf];
+    }
+
+    private void writeAscii(String value) throws IOException {
+        ensureCapacity(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            buffer[position++] = (byte) value.charAt(i);
+        }
+    }
+
+    private void writeByte(int value) throws IOException {
+        ensureCapacity(1);
+        buffer[position++] = (byte) value;
+    }
+
+    private void ensureCapacity(int length) throws IOException {
+        if (position + length > buffer.length) {
+            if (out != null) {
+                flush();
+            } else {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + length));
+            }
+        }
+    }
+
+    private void flush() throws IOException {
+        if (position > 0) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+}
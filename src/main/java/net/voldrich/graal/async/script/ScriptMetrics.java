@@ -0,0 +1,88 @@
+package net.voldrich.graal.async.script;
+
+/**
+ * Instrumentation of the execution pipeline. Default {@link #NOOP} records nothing,
+ * see {@link MicrometerScriptMetrics} for Micrometer based implementation.
+ **/
+public interface ScriptMetrics {
+
+    ScriptMetrics NOOP = new ScriptMetrics() {
+    };
+
+    /**
+     * Measured parts of one execution.
+     **/
+    enum Phase {
+        /** Polyglot context is built, only for contexts not taken from the pool. */
+        CONTEXT_BUILD,
+        /** Handler initiates the new context. */
+        INITIATION,
+        /** Handler evaluates the script. */
+        EVALUATION,
+        /** Promise returned by the script is being resolved, including all async host operations. */
+        PROMISE_RESOLUTION,
+        /** Handler transforms the script response. */
+        TRANSFORMATION,
+        /** Context is released to the pool or closed, including wait for the deferred release task. */
+        RELEASE
+    }
+
+    /**
+     * Registers gauges of the executor, called once when the executor is built.
+     **/
+    default void bindTo(AsyncScriptExecutor executor) {
+    }
+
+    /**
+     * Registers gauges of an engine shard, called for each shard when the executor is built and when a shard is added.
+     **/
+    default void bindShard(EngineShard shard) {
+    }
+
+    /**
+     * Removes gauges of a retired shard.
+     **/
+    default void unbindShard(EngineShard shard) {
+    }
+
+    /**
+     * Registers gauges of a script scheduler, called for each scheduler when the executor is built and when
+     * an elastic scheduler is added.
+     **/
+    default void bindScheduler(ScriptScheduler scriptScheduler) {
+    }
+
+    /**
+     * Removes gauges of a retired scheduler.
+     **/
+    default void unbindScheduler(ScriptScheduler scriptScheduler) {
+    }
+
+    default void recordPhase(Phase phase, long durationNanos, boolean success) {
+    }
+
+    /**
+     * Host operation exceeded {@link OperationLimits}, it was queued until a running operation finished or rejected.
+     * Limit is the description prefix of the exceeded limit, null for limits of the whole execution.
+     **/
+    default void recordOperationLimited(String limit, boolean queued) {
+    }
+
+    /**
+     * Context released after execution was closed, deferred when closed by the teardown task, see {@link TeardownSettings}.
+     **/
+    default void recordContextClosed(long durationNanos, boolean deferred) {
+    }
+
+    /**
+     * Execution waited for its script thread in the priority lane before it started.
+     **/
+    default void recordQueueWait(ExecutionPriority priority, long waitNanos) {
+    }
+
+    /**
+     * Context acquired for an execution, either reused from the pool or newly created.
+     **/
+    default void recordContextAcquired(boolean pooled) {
+    }
+}
@@ -0,0 +1,34 @@
+package net.voldrich.graal.async.script;
+
+import java.io.OutputStream;
+
+/**
+ * Receives standard and error output of a script context. One buffer is owned by one context for its whole life,
+ * pooled contexts reset it between executions.
+ **/
+public abstract class ScriptOutputBuffer extends OutputStream {
+
+    /**
+     * Output captured during the current execution.
+     **/
+    public abstract String getOutput();
+
+    /**
+     * Called when a new execution starts in the owning context.
+     **/
+    public void startExecution(String transactionId) {
+        // do nothing
+    }
+
+    /**
+     * Clears captured output before the owning context is reused.
+     **/
+    public abstract void reset();
+
+    /**
+     * Called when the owning context is closed, buffer is not used after that and can be recycled.
+     **/
+    public void release() {
+        // do nothing
+    }
+}
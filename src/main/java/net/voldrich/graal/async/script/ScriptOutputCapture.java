@@ -0,0 +1,53 @@
+package net.voldrich.graal.async.script;
+
+/**
+ * Defines how script output is captured. Opens one output buffer for each created context.
+ **/
+public interface ScriptOutputCapture {
+
+    ScriptOutputBuffer open();
+
+    /**
+     * Output is discarded, exceptions report empty output.
+     **/
+    static ScriptOutputCapture disabled() {
+        return DisabledOutputBuffer::new;
+    }
+
+    /**
+     * Last maxBytes of output are kept per execution, older output is replaced by a truncation marker.
+     * Buffers of closed contexts are recycled.
+     **/
+    static ScriptOutputCapture bounded(int maxBytes) {
+        return new BoundedOutputCapture(maxBytes);
+    }
+
+    /**
+     * Output is passed line by line to the sink, nothing is kept in memory.
+     **/
+    static ScriptOutputCapture streaming(ScriptOutputSink sink) {
+        return () -> new StreamingOutputBuffer(sink);
+    }
+
+    final class DisabledOutputBuffer extends ScriptOutputBuffer {
+        @Override
+        public void write(int b) {
+            // discarded
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            // discarded
+        }
+
+        @Override
+        public String getOutput() {
+            return "";
+        }
+
+        @Override
+        public void reset() {
+            // nothing to reset
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package net.voldrich.graal.async.script;
+
+/**
+ * Receives script output line by line when output is streamed, see {@link ScriptOutputCapture#streaming(ScriptOutputSink)}.
+ **/
+@FunctionalInterface
+public interface ScriptOutputSink {
+
+    void writeLine(String transactionId, String line);
+}
@@ -0,0 +1,199 @@
+package net.voldrich.graal.async.script;
+
+import lombok.extern.slf4j.Slf4j;
+import org.graalvm.polyglot.Context;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static net.voldrich.graal.async.script.AsyncScriptExecutor.JS_LANGUAGE_TYPE;
+
+/**
+ * Registry of versioned scripts executed by id.
+ * Each version is parsed once and its {@link org.graalvm.polyglot.Source} is shared by all executions, so the
+ * engine keeps a single cached copy of it. Published versions are validated by parsing them on every engine shard,
+ * and warmed up only if a warm-up handler is given, before they replace the current version of the script. Published versions are kept in a bounded LRU cache, evicted versions which are not
+ * current are released and can be collected from the engine source cache.
+ **/
+@Slf4j
+public class ScriptRegistry {
+
+    private final AsyncScriptExecutor executor;
+
+    private final int maxCachedVersions;
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final ConcurrentHashMap<String, ScriptVersion> currentVersions = new ConcurrentHashMap<>();
+
+    /** Sequence of the last publish of each script, only the last publish is activated once validated and warmed. */
+    private final ConcurrentHashMap<String, Long> lastPublished = new ConcurrentHashMap<>();
+
+    private final LinkedHashMap<String, ScriptVersion> cachedVersions;
+
+    ScriptRegistry(AsyncScriptExecutor executor, int maxCachedVersions) {
+        this.executor = executor;
+        this.maxCachedVersions = maxCachedVersions;
+        this.cachedVersions = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ScriptVersion> eldest) {
+                return size() > ScriptRegistry.this.maxCachedVersions;
+            }
+        };
+    }
+
+    /**
+     * Publishes new version of the script. Version is validated by parsing it on every engine shard and becomes
+     * current once parsed, syntax error fails the publish. Parsing is not a warm-up, the version still runs
+     * interpreted on its first executions. Publishing the same content again returns the already cached version.
+     **/
+    public Mono<ScriptVersion> publish(String scriptId, String script) {
+        return publish(scriptId, script, null, 0);
+    }
+
+    /**
+     * Publishes new version of the script and executes it by the warm-up handler given number of times
+     * before it becomes current. Executions already running keep using the previous version.
+     **/
+    public Mono<ScriptVersion> publish(String scriptId, String script, ScriptHandler<?> warmupHandler, int warmupIterations) {
+        return Mono.defer(() -> {
+            long publishSequence = sequence.incrementAndGet();
+            lastPublished.merge(scriptId, publishSequence, Math::max);
+            ScriptVersion version = getOrCreateVersion(scriptId, script);
+            Mono<?> activation = validateOnEngines(version);
+            if (warmupHandler != null && warmupIterations > 0) {
+                activation = activation.thenMany(Flux.range(0, warmupIterations)
+                        .concatMap(iteration -> executor.executeScript(version, warmupHandler)))
+                        .then();
+            }
+            return activation.then(Mono.fromSupplier(() -> activate(version, publishSequence)));
+        });
+    }
+
+    /**
+     * Current version of the script, null if script is not registered.
+     **/
+    public ScriptVersion getScript(String scriptId) {
+        return currentVersions.get(scriptId);
+    }
+
+    /**
+     * Cached version of the script with given content hash, null if it is not cached.
+     **/
+    public ScriptVersion getScript(String scriptId, String contentHash) {
+        ScriptVersion current = currentVersions.get(scriptId);
+        if (current != null && current.getContentHash().equals(contentHash)) {
+            return current;
+        }
+        synchronized (cachedVersions) {
+            return cachedVersions.get(versionKey(scriptId, contentHash));
+        }
+    }
+
+    /**
+     * Activates previously published version, for example to roll back. Returns false if the version is not cached.
+     **/
+    public boolean activate(String scriptId, String contentHash) {
+        ScriptVersion version = getScript(scriptId, contentHash);
+        if (version == null) {
+            return false;
+        }
+        synchronized (lastPublished) {
+            lastPublished.put(scriptId, sequence.incrementAndGet());
+            currentVersions.put(scriptId, version);
+        }
+        return true;
+    }
+
+    public void remove(String scriptId) {
+        synchronized (lastPublished) {
+            lastPublished.remove(scriptId);
+            currentVersions.remove(scriptId);
+        }
+        synchronized (cachedVersions) {
+            cachedVersions.values().removeIf(version -> version.getScriptId().equals(scriptId));
+        }
+    }
+
+    public int getCachedVersionCount() {
+        synchronized (cachedVersions) {
+            return cachedVersions.size();
+        }
+    }
+
+    private ScriptVersion getOrCreateVersion(String scriptId, String script) {
+        String contentHash = contentHash(script);
+        String key = versionKey(scriptId, contentHash);
+        synchronized (cachedVersions) {
+            ScriptVersion version = cachedVersions.get(key);
+            if (version == null) {
+                version = new ScriptVersion(scriptId, contentHash, ScriptUtils.parseScript(script, scriptId));
+                cachedVersions.put(key, version);
+            }
+            return version;
+        }
+    }
+
+    /**
+     * Parses the version in a temporary context of every engine shard. Blocking, so it runs on bounded elastic
+     * threads instead of script threads, which would bypass their load accounting and admission.
+     **/
+    private Mono<Void> validateOnEngines(ScriptVersion version) {
+        return Mono.<Void>fromRunnable(() -> {
+            // executions are routed by the handler shard key before the script id, so any shard can execute the script
+            for (EngineShard shard : executor.getEngineShards().getShards()) {
+                if (!shard.tryOpenContext()) {
+                    // shard retired and its engine closed in the meantime
+                    continue;
+                }
+                try (Context context = Context.newBuilder(JS_LANGUAGE_TYPE).engine(shard.getEngine()).build()) {
+                    context.parse(version.getSource());
+                } finally {
+                    shard.contextClosed();
+                }
+            }
+            log.debug("Script {} validated on engine shards", version);
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private ScriptVersion activate(ScriptVersion version, long publishSequence) {
+        // concurrent publishing of the same script keeps the version published last
+        synchronized (lastPublished) {
+            if (Objects.equals(lastPublished.get(version.getScriptId()), publishSequence)) {
+                currentVersions.put(version.getScriptId(), version);
+                log.debug("Script {} activated", version);
+            } else {
+                log.debug("Script {} superseded by newer publish before activation", version);
+            }
+        }
+        return version;
+    }
+
+    private static String versionKey(String scriptId, String contentHash) {
+        return scriptId + "@" + contentHash;
+    }
+
+    static String contentHash(String script) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(script.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+                sb.append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
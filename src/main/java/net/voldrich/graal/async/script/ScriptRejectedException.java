@@ -0,0 +1,11 @@
+package net.voldrich.graal.async.script;
+
+/**
+ * Script execution was rejected by admission control before a context was created.
+ **/
+public class ScriptRejectedException extends RuntimeException {
+
+    public ScriptRejectedException(String message) {
+        super(message);
+    }
+}
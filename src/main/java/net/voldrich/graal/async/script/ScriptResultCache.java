@@ -0,0 +1,219 @@
+package net.voldrich.graal.async.script;
+
+import reactor.core.publisher.Mono;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Cache of transformed results of deterministic scripts, keyed by script identity and the handler result cache key.
+ * Concurrent executions with the same key are coalesced, only the first one executes the script.
+ * Failed and empty executions are not cached.
+ **/
+public class ScriptResultCache {
+
+    private final ResultCacheSettings settings;
+
+    /** Cached results in access order, guarded by its own lock. */
+    private final LinkedHashMap<CacheKey, CachedResult> results = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long totalWeight;
+
+    /** Executions in progress, subscribed by all concurrent requests with the same key. */
+    private final ConcurrentHashMap<CacheKey, Mono<Object>> executions = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    ScriptResultCache(ResultCacheSettings settings) {
+        this.settings = settings;
+    }
+
+    /**
+     * Returns cached result, result of the running execution with the same key, or executes the script.
+     **/
+    @SuppressWarnings("unchecked")
+    <T> Mono<T> get(ScriptVersion scriptVersion, ScriptHandler<T> scriptHandler, Supplier<Mono<T>> execution) {
+        // handlers with their own source are told apart by the source content
+        CacheKey key = new CacheKey(scriptHandler.getClass(),
+                scriptVersion != null ? scriptVersion.toString() : scriptHandler.getSource(),
+                scriptHandler.getResultCacheKey());
+        return Mono.defer(() -> {
+            Object cached = getCached(key);
+            if (cached != null) {
+                hits.increment();
+                return Mono.just((T) cached);
+            }
+            boolean[] created = new boolean[1];
+            Mono<Object> shared = executions.computeIfAbsent(key, missingKey -> {
+                created[0] = true;
+                return execution.get()
+                        .cast(Object.class)
+                        .doOnNext(result -> put(missingKey, result))
+                        .doFinally(signalType -> executions.remove(missingKey))
+                        .cache();
+            });
+            (created[0] ? misses : coalesced).increment();
+            return (Mono<T>) shared;
+        });
+    }
+
+    private Object getCached(CacheKey key) {
+        synchronized (results) {
+            CachedResult cachedResult = results.get(key);
+            if (cachedResult == null) {
+                return null;
+            }
+            if (cachedResult.expiresAt - System.nanoTime() <= 0) {
+                remove(key, cachedResult);
+                return null;
+            }
+            return cachedResult.value;
+        }
+    }
+
+    private void put(CacheKey key, Object value) {
+        long weight = settings.getWeigher().applyAsLong(value);
+        if (weight > settings.getMaxWeight()) {
+            return;
+        }
+        long now = System.nanoTime();
+        synchronized (results) {
+            CachedResult previous = results.put(key,
+                    new CachedResult(value, weight, now + settings.getTimeToLive().toNanos()));
+            if (previous != null) {
+                totalWeight -= previous.weight;
+            }
+            totalWeight += weight;
+            evict(now);
+        }
+    }
+
+    /**
+     * Removes least recently used results until the limits are met, and expired results from the head.
+     * Other expired results are removed when accessed.
+     **/
+    private void evict(long now) {
+        Iterator<Map.Entry<CacheKey, CachedResult>> iterator = results.entrySet().iterator();
+        while (iterator.hasNext()) {
+            CachedResult cachedResult = iterator.next().getValue();
+            boolean overLimit = results.size() > settings.getMaxEntries() || totalWeight > settings.getMaxWeight();
+            if (!overLimit && cachedResult.expiresAt - now > 0) {
+                break;
+            }
+            iterator.remove();
+            totalWeight -= cachedResult.weight;
+            evictions.increment();
+        }
+    }
+
+    private void remove(CacheKey key, CachedResult cachedResult) {
+        results.remove(key);
+        totalWeight -= cachedResult.weight;
+        evictions.increment();
+    }
+
+    public void clear() {
+        synchronized (results) {
+            results.clear();
+            totalWeight = 0;
+        }
+    }
+
+    public int size() {
+        synchronized (results) {
+            return results.size();
+        }
+    }
+
+    /** Estimated memory of cached results in bytes. */
+    public long getWeight() {
+        synchronized (results) {
+            return totalWeight;
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /** Requests served by an execution started by a concurrent request with the same key. */
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Default weigher, exact for strings and byte arrays, a fixed estimate for other results.
+     **/
+    static long estimateWeight(Object value) {
+        if (value instanceof String) {
+            return 40 + 2L * ((String) value).length();
+        }
+        if (value instanceof byte[]) {
+            return 16 + ((byte[]) value).length;
+        }
+        return 64;
+    }
+
+    private static final class CacheKey {
+        private final Class<?> handlerClass;
+        /** Script version, or source of a handler not executed by id. */
+        private final Object script;
+        private final Object resultKey;
+        private final int hash;
+
+        private CacheKey(Class<?> handlerClass, Object script, Object resultKey) {
+            this.handlerClass = handlerClass;
+            this.script = script;
+            this.resultKey = resultKey;
+            this.hash = Objects.hash(handlerClass, script, resultKey);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof CacheKey)) {
+                return false;
+            }
+            CacheKey other = (CacheKey) o;
+            return hash == other.hash
+                    && handlerClass == other.handlerClass
+                    && Objects.equals(script, other.script)
+                    && Objects.equals(resultKey, other.resultKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class CachedResult {
+        private final Object value;
+        private final long weight;
+        private final long expiresAt;
+
+        private CachedResult(Object value, long weight, long expiresAt) {
+            this.value = value;
+            this.weight = weight;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
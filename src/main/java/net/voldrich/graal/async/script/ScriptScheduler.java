@@ -0,0 +1,235 @@
+package net.voldrich.graal.async.script;
+
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongConsumer;
+import java.util.function.ToIntFunction;
+
+/**
+ * Single script thread with its load counters.
+ * All counters are updated and read without locking, so they can be used for scheduler selection on every execution.
+ **/
+public class ScriptScheduler {
+
+    private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+
+    private final String name;
+
+    private final ThreadPoolExecutor executor;
+
+    private final ScriptTaskQueue taskQueue = new ScriptTaskQueue();
+
+    private final Scheduler scheduler;
+
+    /** Executions assigned to this scheduler which did not finish yet, including those waiting to start. */
+    private final AtomicInteger activeExecutions = new AtomicInteger();
+
+    private final LongAdder totalExecutions = new LongAdder();
+
+    /** Utilization counters updated only when tracked, used by {@link SchedulerAutoscaler}. */
+    private final boolean trackUtilization;
+    private final LongAdder busyNanos = new LongAdder();
+    private final LongAdder cpuNanos = new LongAdder();
+    private final LongAdder queueWaitNanos = new LongAdder();
+    private final LongAdder startedExecutions = new LongAdder();
+
+    ScriptScheduler(String name, ThreadFactory threadFactory) {
+        this(name, threadFactory, false);
+    }
+
+    ScriptScheduler(String name, ThreadFactory threadFactory, boolean trackUtilization) {
+        this.name = name;
+        this.trackUtilization = trackUtilization;
+        this.executor = trackUtilization
+                ? new TrackingExecutor(taskQueue, threadFactory)
+                : new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, taskQueue, threadFactory);
+        this.scheduler = Schedulers.fromExecutorService(executor, name);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Scheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Completes on the script thread once the execution start is taken from the priority lane of its tenant,
+     * see {@link ScriptTaskQueue}. Execution subscribed after it starts on the thread, its following tasks use
+     * {@link #getScheduler()}. Start cancelled while waiting in the lane is removed from the queue.
+     **/
+    Mono<Void> startInLane(ExecutionPriority priority, Object tenant, ScriptMetrics scriptMetrics) {
+        return Mono.create(sink -> {
+            LaneStart laneStart = new LaneStart(sink, priority, scriptMetrics);
+            ScriptTaskQueue.LaneTask task = new ScriptTaskQueue.LaneTask(priority, tenant, laneStart, laneStart);
+            sink.onCancel(() -> executor.remove(task));
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                sink.error(e);
+            }
+        });
+    }
+
+    void setTenantWeights(ToIntFunction<Object> tenantWeights) {
+        taskQueue.setTenantWeights(tenantWeights);
+    }
+
+    /** Number of tasks (script starts, promise resolutions, context closes) waiting in the thread queue. */
+    public int getQueuedTasks() {
+        return executor.getQueue().size();
+    }
+
+    public int getActiveExecutions() {
+        return activeExecutions.get();
+    }
+
+    public long getTotalExecutions() {
+        return totalExecutions.sum();
+    }
+
+    /** Load used for scheduler selection, queued tasks plus active executions. */
+    public int getLoad() {
+        return getQueuedTasks() + activeExecutions.get();
+    }
+
+    void executionStarted() {
+        activeExecutions.incrementAndGet();
+        totalExecutions.increment();
+    }
+
+    /**
+     * Starts execution only if the number of active executions is below the limit.
+     **/
+    boolean tryExecutionStarted(int limit) {
+        while (true) {
+            int current = activeExecutions.get();
+            if (current >= limit) {
+                return false;
+            }
+            if (activeExecutions.compareAndSet(current, current + 1)) {
+                totalExecutions.increment();
+                return true;
+            }
+        }
+    }
+
+    void executionFinished() {
+        activeExecutions.decrementAndGet();
+    }
+
+    /** Time the thread spent executing tasks, tracked only for elastic schedulers. */
+    long getBusyNanos() {
+        return busyNanos.sum();
+    }
+
+    /** CPU time of executed tasks, equals busy time when thread CPU time is not measurable. */
+    long getCpuNanos() {
+        return cpuNanos.sum();
+    }
+
+    /** Time executions waited in the lanes before start, tracked only for elastic schedulers. */
+    long getQueueWaitNanos() {
+        return queueWaitNanos.sum();
+    }
+
+    long getStartedExecutions() {
+        return startedExecutions.sum();
+    }
+
+    /**
+     * No execution is assigned and no task is queued or running, contexts of the scheduler are released.
+     **/
+    boolean isIdle() {
+        return activeExecutions.get() == 0 && executor.getQueue().isEmpty() && executor.getActiveCount() == 0;
+    }
+
+    /**
+     * Stops the thread once the already queued tasks are executed.
+     **/
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    void dispose() {
+        scheduler.dispose();
+    }
+
+    /**
+     * Start of an execution in a lane, records its queue wait and completes the start on the script thread.
+     **/
+    private final class LaneStart implements Runnable, LongConsumer {
+        private final MonoSink<Void> sink;
+        private final ExecutionPriority priority;
+        private final ScriptMetrics scriptMetrics;
+
+        LaneStart(MonoSink<Void> sink, ExecutionPriority priority, ScriptMetrics scriptMetrics) {
+            this.sink = sink;
+            this.priority = priority;
+            this.scriptMetrics = scriptMetrics;
+        }
+
+        @Override
+        public void accept(long waitNanos) {
+            if (trackUtilization) {
+                queueWaitNanos.add(waitNanos);
+                startedExecutions.increment();
+            }
+            scriptMetrics.recordQueueWait(priority, waitNanos);
+        }
+
+        @Override
+        public void run() {
+            sink.success();
+        }
+    }
+
+    /**
+     * Executor of the single script thread measuring wall and CPU time of its tasks.
+     * Start times are kept in plain fields as the tasks are executed by one thread.
+     **/
+    private final class TrackingExecutor extends ThreadPoolExecutor {
+        private long taskStart;
+        private long taskCpuStart;
+
+        TrackingExecutor(ScriptTaskQueue taskQueue, ThreadFactory threadFactory) {
+            super(1, 1, 0L, TimeUnit.MILLISECONDS, taskQueue, threadFactory);
+        }
+
+        @Override
+        protected void beforeExecute(Thread thread, Runnable task) {
+            taskCpuStart = currentThreadCpuTime();
+            taskStart = System.nanoTime();
+        }
+
+        @Override
+        protected void afterExecute(Runnable task, Throwable error) {
+            long busy = System.nanoTime() - taskStart;
+            long cpuEnd = currentThreadCpuTime();
+            busyNanos.add(busy);
+            cpuNanos.add(cpuEnd >= 0 && taskCpuStart >= 0 ? Math.min(busy, cpuEnd - taskCpuStart) : busy);
+        }
+
+        private long currentThreadCpuTime() {
+            // not supported for virtual threads and on some platforms
+            return THREAD_MX_BEAN.isCurrentThreadCpuTimeSupported() ? THREAD_MX_BEAN.getCurrentThreadCpuTime() : -1;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name + "[queued=" + getQueuedTasks() + ", active=" + activeExecutions.get() + "]";
+    }
+}
@@ -1,48 +1,264 @@
 package net.voldrich.graal.async.script;
 
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
 import reactor.core.scheduler.Scheduler;
-import reactor.core.scheduler.Schedulers;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
 
+/**
+ * Script threads executing the contexts, each context is confined to one of them.
+ * Platform mode uses one platform thread per scheduler, virtual mode (JDK 21+) uses one virtual thread
+ * per scheduler, see {@link #virtual(int, int)}. Elastic mode adds and retires schedulers by utilization,
+ * see {@link #elastic(ElasticSettings)}.
+ **/
+@Slf4j
 public class ScriptSchedulers {
 
-    private final List<Scheduler> schedulerList;
+    private static final Duration RETIREMENT_CHECK_INTERVAL = Duration.ofMillis(100);
 
-    private final int numberOfSchedulers;
+    /** Immutable list replaced when schedulers are added or retired. */
+    private volatile List<ScriptScheduler> schedulerList;
 
-    private volatile int nextScheduler = 0;
+    private final SchedulerSelection selection;
+
+    private final String namePrefix;
+
+    private final Function<String, ThreadFactory> threadFactory;
+
+    private final boolean trackUtilization;
+
+    private final AtomicInteger nextScheduler = new AtomicInteger();
+
+    private final AtomicInteger nextSchedulerIndex = new AtomicInteger();
+
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    private volatile ToIntFunction<Object> tenantWeights;
+
+    /** Periodic evaluation of elastic schedulers, disposed when not elastic. */
+    private volatile Disposable autoscaling = Disposables.disposed();
 
     public ScriptSchedulers() {
         this(Runtime.getRuntime().availableProcessors());
     }
 
     public ScriptSchedulers(int numberOfSchedulers) {
-        this.numberOfSchedulers = numberOfSchedulers;
-        this.schedulerList = createSchedulers(numberOfSchedulers);
+        this(numberOfSchedulers, SchedulerSelection.POWER_OF_TWO_CHOICES);
+    }
+
+    public ScriptSchedulers(int numberOfSchedulers, SchedulerSelection selection) {
+        this(numberOfSchedulers, selection, "Script-", ScriptSchedulerThreadFactory::new, false);
     }
 
-    private List<Scheduler> createSchedulers(int numberOfSchedulers) {
-        List<Scheduler> list = new ArrayList<>(numberOfSchedulers);
+    private ScriptSchedulers(int numberOfSchedulers,
+                             SchedulerSelection selection,
+                             String namePrefix,
+                             Function<String, ThreadFactory> threadFactory,
+                             boolean trackUtilization) {
+        this.selection = selection;
+        this.namePrefix = namePrefix;
+        this.threadFactory = threadFactory;
+        this.trackUtilization = trackUtilization;
+        List<ScriptScheduler> list = new ArrayList<>(numberOfSchedulers);
         for (int i = 0; i < numberOfSchedulers; i++) {
-            list.add(Schedulers.fromExecutorService(
-                    Executors.newSingleThreadExecutor(
-                            new ScriptSchedulerThreadFactory("Script-" + i))));
+            list.add(createScheduler());
+        }
+        this.schedulerList = Collections.unmodifiableList(list);
+    }
+
+    /**
+     * Schedulers running on virtual threads, requires JDK 21 or newer.
+     * Each scheduler is one virtual thread executing its contexts one at a time, contexts are not given a thread
+     * of their own. A script blocking in a host call releases the carrier thread, so only contexts of the same
+     * scheduler wait. Use many more schedulers than cores. Carrier threads are those of the JDK default scheduler,
+     * their number is set by the application with {@code -Djdk.virtualThreadScheduler.parallelism}.
+     **/
+    public static ScriptSchedulers virtual(int numberOfSchedulers) {
+        return virtual(numberOfSchedulers, SchedulerSelection.POWER_OF_TWO_CHOICES);
+    }
+
+    public static ScriptSchedulers virtual(int numberOfSchedulers, SchedulerSelection selection) {
+        if (!VirtualThreads.isSupported()) {
+            throw new UnsupportedOperationException("Virtual threads require JDK 21 or newer");
         }
-        return Collections.unmodifiableList(list);
+        return new ScriptSchedulers(numberOfSchedulers, selection, "VirtualScript-", VirtualThreads::threadFactory, false);
+    }
+
+    /**
+     * Schedulers on platform threads whose number changes within the bounds of the settings, driven by queue wait,
+     * utilization and blocked time of the threads, see {@link ElasticSettings}. New executions are not assigned
+     * to a retired scheduler, its thread stops once all its executions finish and its contexts are closed.
+     **/
+    public static ScriptSchedulers elastic(ElasticSettings settings) {
+        return elastic(settings, SchedulerSelection.POWER_OF_TWO_CHOICES);
+    }
+
+    public static ScriptSchedulers elastic(ElasticSettings settings, SchedulerSelection selection) {
+        int initialSchedulers = Math.max(settings.getMinSchedulers(),
+                Math.min(settings.getMaxSchedulers(), settings.getInitialSchedulers()));
+        ScriptSchedulers scriptSchedulers = new ScriptSchedulers(Math.max(1, initialSchedulers), selection,
+                "Script-", ScriptSchedulerThreadFactory::new, true);
+        scriptSchedulers.autoscaling = new SchedulerAutoscaler(scriptSchedulers, settings).start();
+        return scriptSchedulers;
+    }
+
+    /**
+     * Adds a new scheduler, it is selected for new executions right away.
+     **/
+    public synchronized ScriptScheduler addScheduler() {
+        ScriptScheduler scriptScheduler = createScheduler();
+        List<ScriptScheduler> list = new ArrayList<>(schedulerList);
+        list.add(scriptScheduler);
+        schedulerList = Collections.unmodifiableList(list);
+        listeners.forEach(listener -> listener.schedulerAdded(scriptScheduler));
+        return scriptScheduler;
+    }
+
+    /**
+     * Stops selecting the scheduler for new executions. Its thread is stopped once it is idle, listeners
+     * are notified before, so they can release resources bound to the thread on it.
+     * Returns false if the scheduler is the last one or was already retired.
+     **/
+    public synchronized boolean retireScheduler(ScriptScheduler scriptScheduler) {
+        if (schedulerList.size() <= 1 || !schedulerList.contains(scriptScheduler)) {
+            return false;
+        }
+        List<ScriptScheduler> list = new ArrayList<>(schedulerList);
+        list.remove(scriptScheduler);
+        schedulerList = Collections.unmodifiableList(list);
+        stopWhenIdle(scriptScheduler);
+        return true;
+    }
+
+    private void stopWhenIdle(ScriptScheduler scriptScheduler) {
+        // executions assigned before the retirement finish on the scheduler, contexts stay pinned to its thread
+        Flux.interval(RETIREMENT_CHECK_INTERVAL)
+                .filter(tick -> scriptScheduler.isIdle())
+                .next()
+                .subscribe(tick -> {
+                    listeners.forEach(listener -> listener.schedulerRetired(scriptScheduler));
+                    scriptScheduler.shutdown();
+                    log.debug("Script scheduler {} stopped", scriptScheduler.getName());
+                });
+    }
+
+    /**
+     * Notified when schedulers are added or retired.
+     **/
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    private ScriptScheduler createScheduler() {
+        String name = namePrefix + nextSchedulerIndex.getAndIncrement();
+        ScriptScheduler scriptScheduler = new ScriptScheduler(name, threadFactory.apply(name), trackUtilization);
+        if (tenantWeights != null) {
+            scriptScheduler.setTenantWeights(tenantWeights);
+        }
+        return scriptScheduler;
+    }
+
+    /**
+     * Weights of tenants sharing a priority lane, a tenant starts up to its weight of executions before the next
+     * tenant in turn, see {@link ScriptHandler#getTenantKey()}. All tenants have weight 1 by default.
+     **/
+    public synchronized ScriptSchedulers setTenantWeights(ToIntFunction<Object> tenantWeights) {
+        this.tenantWeights = tenantWeights;
+        schedulerList.forEach(scriptScheduler -> scriptScheduler.setTenantWeights(tenantWeights));
+        return this;
     }
 
     public Scheduler getNextScheduler() {
-        nextScheduler = (nextScheduler + 1) % numberOfSchedulers;
-        return schedulerList.get(nextScheduler);
+        return selectScheduler().getScheduler();
+    }
+
+    /**
+     * Selects script scheduler for a new execution according to the selection strategy.
+     **/
+    public ScriptScheduler selectScheduler() {
+        // one snapshot per selection, schedulers can be added or retired concurrently
+        List<ScriptScheduler> schedulers = schedulerList;
+        int numberOfSchedulers = schedulers.size();
+        if (numberOfSchedulers == 1) {
+            return schedulers.get(0);
+        }
+        switch (selection) {
+            case ROUND_ROBIN:
+                return schedulers.get(Math.floorMod(nextScheduler.getAndIncrement(), numberOfSchedulers));
+            case LEAST_LOADED:
+                return selectLeastLoaded(schedulers);
+            default:
+                return selectPowerOfTwoChoices(schedulers);
+        }
+    }
+
+    private ScriptScheduler selectLeastLoaded(List<ScriptScheduler> schedulers) {
+        int numberOfSchedulers = schedulers.size();
+        // start from rotating offset so ties do not always end on the first scheduler
+        int offset = Math.floorMod(nextScheduler.getAndIncrement(), numberOfSchedulers);
+        ScriptScheduler selected = schedulers.get(offset);
+        int selectedLoad = selected.getLoad();
+        for (int i = 1; i < numberOfSchedulers && selectedLoad > 0; i++) {
+            ScriptScheduler candidate = schedulers.get((offset + i) % numberOfSchedulers);
+            int load = candidate.getLoad();
+            if (load < selectedLoad) {
+                selected = candidate;
+                selectedLoad = load;
+            }
+        }
+        return selected;
+    }
+
+    private static ScriptScheduler selectPowerOfTwoChoices(List<ScriptScheduler> schedulers) {
+        int numberOfSchedulers = schedulers.size();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(numberOfSchedulers);
+        int second = random.nextInt(numberOfSchedulers - 1);
+        if (second >= first) {
+            second++;
+        }
+        ScriptScheduler firstScheduler = schedulers.get(first);
+        ScriptScheduler secondScheduler = schedulers.get(second);
+        return secondScheduler.getLoad() < firstScheduler.getLoad() ? secondScheduler : firstScheduler;
+    }
+
+    /**
+     * Script schedulers with their load counters, retired schedulers are not included.
+     **/
+    public List<ScriptScheduler> getSchedulers() {
+        return schedulerList;
     }
 
     public void dispose() {
-        schedulerList.forEach(Scheduler::dispose);
+        autoscaling.dispose();
+        schedulerList.forEach(ScriptScheduler::dispose);
+    }
+
+    /**
+     * Listener of changes of elastic schedulers.
+     **/
+    public interface Listener {
+
+        default void schedulerAdded(ScriptScheduler scriptScheduler) {
+        }
+
+        /**
+         * Called once the retired scheduler is idle, tasks scheduled on it still run before its thread stops.
+         **/
+        default void schedulerRetired(ScriptScheduler scriptScheduler) {
+        }
     }
 
     private static final class ScriptSchedulerThreadFactory implements ThreadFactory {
@@ -0,0 +1,318 @@
+package net.voldrich.graal.async.script;
+
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongConsumer;
+import java.util.function.ToIntFunction;
+
+/**
+ * Task queue of a script thread with priority lanes. Tasks of started executions (promise resolutions, context
+ * releases) are not tagged and run first in FIFO order, so work already in progress finishes before new one starts.
+ * Execution starts are tagged by {@link LaneTask} and taken by strict priority between lanes and by weighted
+ * round robin between tenants within a lane (deficit round robin with unit cost), a tenant starts up to its weight
+ * of executions before the next tenant.
+ **/
+class ScriptTaskQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable> {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+
+    private final ArrayDeque<Runnable> internal = new ArrayDeque<>();
+    private final Lane[] lanes;
+    /** Written only under the lock, read without it by {@link #size()} for scheduler selection. */
+    private volatile int count;
+
+    private volatile ToIntFunction<Object> tenantWeights = tenant -> 1;
+
+    ScriptTaskQueue() {
+        ExecutionPriority[] priorities = ExecutionPriority.values();
+        this.lanes = new Lane[priorities.length];
+        for (int i = 0; i < priorities.length; i++) {
+            lanes[i] = new Lane();
+        }
+    }
+
+    void setTenantWeights(ToIntFunction<Object> tenantWeights) {
+        this.tenantWeights = tenantWeights;
+    }
+
+    @Override
+    public boolean offer(Runnable task) {
+        lock.lock();
+        try {
+            if (task instanceof LaneTask) {
+                LaneTask laneTask = (LaneTask) task;
+                lanes[laneTask.priority.ordinal()].add(laneTask);
+            } else {
+                internal.add(task);
+            }
+            count++;
+            notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void put(Runnable task) {
+        offer(task);
+    }
+
+    @Override
+    public boolean offer(Runnable task, long timeout, TimeUnit unit) {
+        return offer(task);
+    }
+
+    @Override
+    public Runnable take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (count == 0) {
+                notEmpty.await();
+            }
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (count == 0) {
+                if (nanos <= 0) {
+                    return null;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable poll() {
+        lock.lock();
+        try {
+            return count > 0 ? dequeue() : null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable peek() {
+        lock.lock();
+        try {
+            if (!internal.isEmpty()) {
+                return internal.peek();
+            }
+            for (Lane lane : lanes) {
+                if (!lane.active.isEmpty()) {
+                    return lane.active.peek().tasks.peek();
+                }
+            }
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Runnable dequeue() {
+        count--;
+        if (!internal.isEmpty()) {
+            return internal.poll();
+        }
+        for (Lane lane : lanes) {
+            if (!lane.active.isEmpty()) {
+                return lane.poll(tenantWeights);
+            }
+        }
+        throw new IllegalStateException("Task count does not match queued tasks");
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public int drainTo(Collection<? super Runnable> collection) {
+        return drainTo(collection, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super Runnable> collection, int maxElements) {
+        lock.lock();
+        try {
+            int drained = 0;
+            while (count > 0 && drained < maxElements) {
+                collection.add(dequeue());
+                drained++;
+            }
+            return drained;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the task if it is still queued, used by the executor to withdraw tasks rejected by shutdown or purge.
+     **/
+    @Override
+    public boolean remove(Object task) {
+        lock.lock();
+        try {
+            boolean removed = task instanceof LaneTask
+                    ? lanes[((LaneTask) task).priority.ordinal()].remove((LaneTask) task)
+                    : internal.remove(task);
+            if (removed) {
+                count--;
+            }
+            return removed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Snapshot of queued tasks, internal tasks first and then lanes by priority.
+     * Removal through the iterator removes the task from the queue if it is still queued.
+     **/
+    @Override
+    public Iterator<Runnable> iterator() {
+        List<Runnable> snapshot;
+        lock.lock();
+        try {
+            snapshot = new ArrayList<>(count);
+            snapshot.addAll(internal);
+            for (Lane lane : lanes) {
+                lane.active.forEach(tenantQueue -> snapshot.addAll(tenantQueue.tasks));
+            }
+        } finally {
+            lock.unlock();
+        }
+        Iterator<Runnable> tasks = snapshot.iterator();
+        return new Iterator<Runnable>() {
+            private Runnable last;
+
+            @Override
+            public boolean hasNext() {
+                return tasks.hasNext();
+            }
+
+            @Override
+            public Runnable next() {
+                last = tasks.next();
+                return last;
+            }
+
+            @Override
+            public void remove() {
+                if (last == null) {
+                    throw new IllegalStateException();
+                }
+                ScriptTaskQueue.this.remove(last);
+                last = null;
+            }
+        };
+    }
+
+    /**
+     * Execution start queued in a priority lane. Reports its queue wait before the start.
+     **/
+    static final class LaneTask implements Runnable {
+        private final ExecutionPriority priority;
+        private final Object tenant;
+        private final Runnable task;
+        private final LongConsumer queueWaitListener;
+        private final long enqueuedAt = System.nanoTime();
+
+        LaneTask(ExecutionPriority priority, Object tenant, Runnable task, LongConsumer queueWaitListener) {
+            this.priority = priority;
+            this.tenant = tenant;
+            this.task = task;
+            this.queueWaitListener = queueWaitListener;
+        }
+
+        @Override
+        public void run() {
+            queueWaitListener.accept(System.nanoTime() - enqueuedAt);
+            task.run();
+        }
+    }
+
+    /**
+     * Tenants with queued tasks in round robin order, the head tenant keeps its turn until its credit is used.
+     **/
+    private static final class Lane {
+        private final Map<Object, TenantQueue> tenants = new HashMap<>();
+        private final ArrayDeque<TenantQueue> active = new ArrayDeque<>();
+
+        void add(LaneTask task) {
+            TenantQueue tenantQueue = tenants.computeIfAbsent(task.tenant, TenantQueue::new);
+            if (tenantQueue.tasks.isEmpty()) {
+                active.add(tenantQueue);
+            }
+            tenantQueue.tasks.add(task);
+        }
+
+        boolean remove(LaneTask task) {
+            TenantQueue tenantQueue = tenants.get(task.tenant);
+            if (tenantQueue == null || !tenantQueue.tasks.remove(task)) {
+                return false;
+            }
+            if (tenantQueue.tasks.isEmpty()) {
+                active.remove(tenantQueue);
+                tenants.remove(tenantQueue.tenant);
+            }
+            return true;
+        }
+
+        LaneTask poll(ToIntFunction<Object> tenantWeights) {
+            TenantQueue tenantQueue = active.peek();
+            if (tenantQueue.credit <= 0) {
+                tenantQueue.credit = Math.max(1, tenantWeights.applyAsInt(tenantQueue.tenant));
+            }
+            LaneTask task = tenantQueue.tasks.poll();
+            tenantQueue.credit--;
+            if (tenantQueue.tasks.isEmpty()) {
+                // idle tenant does not keep its credit
+                active.poll();
+                tenants.remove(tenantQueue.tenant);
+            } else if (tenantQueue.credit == 0) {
+                active.add(active.poll());
+            }
+            return task;
+        }
+    }
+
+    private static final class TenantQueue {
+        private final Object tenant;
+        private final ArrayDeque<LaneTask> tasks = new ArrayDeque<>();
+        private int credit;
+
+        TenantQueue(Object tenant) {
+            this.tenant = tenant;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package net.voldrich.graal.async.script;
+
+import lombok.Getter;
+
+import java.time.Duration;
+
+/**
+ * Script exceeded its execution deadline or statement limit. The context was cancelled.
+ **/
+@Getter
+public class ScriptTimeoutException extends ScriptExecutionException {
+
+    /** Phase the execution was in when the limit was exceeded. */
+    private final ExecutionPhase phase;
+
+    /** Time elapsed since the execution started. */
+    private final Duration elapsed;
+
+    public ScriptTimeoutException(ScriptContext scriptContext, String reason, ExecutionPhase phase, Duration elapsed) {
+        super(scriptContext, reason + " in phase " + phase + " after " + elapsed.toMillis() + " ms", "limit", "");
+        this.phase = phase;
+        this.elapsed = elapsed;
+    }
+}
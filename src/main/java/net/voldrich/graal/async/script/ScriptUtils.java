@@ -9,6 +9,8 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -18,8 +20,12 @@ import static net.voldrich.graal.async.script.AsyncScriptExecutor.JS_LANGUAGE_TY
 public class ScriptUtils {
 
     public static Source parseScript(String script) {
+        return parseScript(script, "script");
+    }
+
+    public static Source parseScript(String script, String name) {
         try {
-            return Source.newBuilder(JS_LANGUAGE_TYPE, script, "script")
+            return Source.newBuilder(JS_LANGUAGE_TYPE, script, name)
                     .cached(true)
                     .build();
         } catch (IOException e) {
@@ -67,6 +73,79 @@ public class ScriptUtils {
         return error.getMember("stack").toString();
     }
 
+    public static Value getGlobalMember(ScriptContext scriptContext, String name) {
+        return scriptContext.getIntrinsics().getGlobal(name);
+    }
+
+    public static Value getJSONMember(ScriptContext scriptContext) {
+        return scriptContext.getIntrinsics().getJSON();
+    }
+
+    public static Value parseJson(ScriptContext scriptContext, String data) {
+        return scriptContext.getIntrinsics().getJsonParse().execute(data);
+    }
+
+    public static Value stringify(ScriptContext scriptContext, Object data) {
+        return scriptContext.getIntrinsics().getJsonStringify().execute(data);
+    }
+
+    public static String stringifyToString(ScriptContext scriptContext, Object data) {
+        if (data instanceof String) {
+            return (String) data;
+        }
+        if (data instanceof Value && ((Value) data).isString()) {
+            return ((Value) data).asString();
+        }
+        return stringify(scriptContext, data).toString();
+    }
+
+    /**
+     * Writes data as UTF-8 JSON to the output stream without building an intermediate string, strings are written
+     * as is, the same way as by {@link #stringifyToString(ScriptContext, Object)}.
+     * Returns false and writes nothing if data is undefined or a function.
+     **/
+    public static boolean stringifyTo(ScriptContext scriptContext, Object data, OutputStream out) throws IOException {
+        if (data instanceof String) {
+            out.write(((String) data).getBytes(StandardCharsets.UTF_8));
+            return true;
+        }
+        Value value = data instanceof Value ? (Value) data : scriptContext.getContext().asValue(data);
+        if (value.isString()) {
+            out.write(value.asString().getBytes(StandardCharsets.UTF_8));
+            return true;
+        }
+        return scriptContext.getIntrinsics().getJsonWriter().write(value, out);
+    }
+
+    /**
+     * UTF-8 JSON bytes of the data, see {@link #stringifyTo(ScriptContext, Object, OutputStream)}.
+     * JSON is written into the buffer of the writer and copied once to the returned array.
+     * Returns null if data is undefined or a function.
+     **/
+    public static byte[] stringifyToBytes(ScriptContext scriptContext, Object data) {
+        if (data instanceof String) {
+            return ((String) data).getBytes(StandardCharsets.UTF_8);
+        }
+        Value value = data instanceof Value ? (Value) data : scriptContext.getContext().asValue(data);
+        if (value.isString()) {
+            return value.asString().getBytes(StandardCharsets.UTF_8);
+        }
+        return scriptContext.getIntrinsics().getJsonWriter().writeToBytes(value);
+    }
+
+    public static Value stringifyPretty(ScriptContext scriptContext, Value data) {
+        return scriptContext.getIntrinsics().getJsonStringify().execute(data, null, 2);
+    }
+
+    public static Value getGlobalPromise(ScriptContext scriptContext) {
+        return scriptContext.getIntrinsics().getPromise();
+    }
+
+    public static String getCurrentJsStack(ScriptContext scriptContext) {
+        Value error = scriptContext.getIntrinsics().getError().newInstance();
+        return error.getMember("stack").toString();
+    }
+
     public static void logValue(Value jsValue, int indent) {
         jsValue.getMemberKeys().forEach(key -> {
             StringBuilder sb = new StringBuilder();
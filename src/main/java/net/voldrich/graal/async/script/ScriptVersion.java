@@ -0,0 +1,28 @@
+package net.voldrich.graal.async.script;
+
+import lombok.Getter;
+import org.graalvm.polyglot.Source;
+
+/**
+ * Immutable version of a registered script. Versions of the same script differ by content hash.
+ **/
+@Getter
+public class ScriptVersion {
+
+    private final String scriptId;
+
+    private final String contentHash;
+
+    private final Source source;
+
+    ScriptVersion(String scriptId, String contentHash, Source source) {
+        this.scriptId = scriptId;
+        this.contentHash = contentHash;
+        this.source = source;
+    }
+
+    @Override
+    public String toString() {
+        return scriptId + "@" + contentHash;
+    }
+}
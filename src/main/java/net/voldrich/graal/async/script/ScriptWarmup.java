@@ -0,0 +1,144 @@
+package net.voldrich.graal.async.script;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Executes warm-up scripts on every script thread before the executor reports it is ready, so first requests
+ * after start do not run on a cold engine. Scripts are warmed one after another, see {@link WarmupSettings}.
+ * Readiness is set once all scripts are warmed, failed scripts are reported but do not prevent readiness.
+ **/
+@Slf4j
+public class ScriptWarmup {
+
+    private final AsyncScriptExecutor executor;
+
+    private final WarmupSettings settings;
+
+    private final Mono<WarmupReport> execution;
+
+    private volatile WarmupReport report;
+
+    ScriptWarmup(AsyncScriptExecutor executor, WarmupSettings settings) {
+        this.executor = executor;
+        this.settings = settings;
+        this.execution = Mono.defer(this::warmUp)
+                .doOnNext(warmupReport -> report = warmupReport)
+                .cache();
+    }
+
+    /**
+     * Starts the warm-up if not started yet. Returned mono completes with the report once the executor is ready.
+     **/
+    public Mono<WarmupReport> start() {
+        execution.subscribe();
+        return execution;
+    }
+
+    public boolean isReady() {
+        return report != null;
+    }
+
+    /**
+     * Report of the finished warm-up, null until the executor is ready.
+     **/
+    public WarmupReport getReport() {
+        return report;
+    }
+
+    private Mono<WarmupReport> warmUp() {
+        long start = System.nanoTime();
+        log.info("Warming up {} scripts", settings.getScripts().size());
+        return Flux.fromIterable(settings.getScripts())
+                .concatMap(this::warmUpScript)
+                .collectList()
+                .map(results -> new WarmupReport(Duration.ofNanos(System.nanoTime() - start), results))
+                .doOnNext(warmupReport -> log.info("{}", warmupReport));
+    }
+
+    private Mono<WarmupReport.ScriptResult> warmUpScript(WarmupSettings.WarmupScript script) {
+        LatencyTracker tracker = new LatencyTracker();
+        return Flux.range(0, settings.getMaxRounds())
+                .concatMap(round -> executeRound(script))
+                .takeUntil(tracker::record)
+                .then(Mono.fromSupplier(() -> tracker.toResult(script.getName(), null)))
+                .onErrorResume(error -> {
+                    log.warn("Warm-up of script {} failed: {}", script.getName(), error.getMessage());
+                    return Mono.just(tracker.toResult(script.getName(), error));
+                });
+    }
+
+    /**
+     * Executes the script on every script scheduler in parallel, returns median latency of the round.
+     **/
+    private Mono<Long> executeRound(WarmupSettings.WarmupScript script) {
+        return Mono.defer(() -> {
+            ScriptVersion scriptVersion = null;
+            if (script.getScriptId() != null) {
+                scriptVersion = executor.getScriptRegistry().getScript(script.getScriptId());
+                if (scriptVersion == null) {
+                    return Mono.error(new IllegalArgumentException("Script " + script.getScriptId() + " is not registered"));
+                }
+            }
+            ScriptVersion version = scriptVersion;
+            List<ScriptScheduler> schedulers = executor.getScriptSchedulers().getSchedulers();
+            return Flux.fromIterable(schedulers)
+                    .flatMap(scriptScheduler -> Flux.range(0, settings.getExecutionsPerRound())
+                            .concatMap(execution -> timed(executor.executeOnPinnedScheduler(
+                                    scriptScheduler, version, script.getScriptHandler()))), schedulers.size())
+                    .collectList()
+                    .map(ScriptWarmup::median);
+        });
+    }
+
+    private static Mono<Long> timed(Mono<?> execution) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return execution.then(Mono.fromSupplier(() -> System.nanoTime() - start));
+        });
+    }
+
+    private static long median(List<Long> latencies) {
+        long[] sorted = latencies.stream().mapToLong(Long::longValue).toArray();
+        Arrays.sort(sorted);
+        return sorted.length > 0 ? sorted[sorted.length / 2] : 0;
+    }
+
+    /**
+     * Median latencies of rounds of one script, rounds are executed sequentially.
+     **/
+    private final class LatencyTracker {
+        private long initialLatency = -1;
+        private long lastLatency = -1;
+        private int rounds;
+        private int stableRounds;
+        private boolean stabilized;
+
+        /** Records latency of a round, returns true once the latency is stable. */
+        boolean record(long latency) {
+            rounds++;
+            if (initialLatency < 0) {
+                initialLatency = latency;
+            } else if (Math.abs(latency - lastLatency) <= lastLatency * settings.getStableTolerance()) {
+                stableRounds++;
+            } else {
+                stableRounds = 0;
+            }
+            lastLatency = latency;
+            stabilized = rounds >= settings.getMinRounds() && stableRounds >= settings.getStableRounds();
+            return stabilized;
+        }
+
+        WarmupReport.ScriptResult toResult(String name, Throwable error) {
+            return new WarmupReport.ScriptResult(name, rounds,
+                    initialLatency >= 0 ? Duration.ofNanos(initialLatency) : null,
+                    lastLatency >= 0 ? Duration.ofNanos(lastLatency) : null,
+                    stabilized, error);
+        }
+    }
+}
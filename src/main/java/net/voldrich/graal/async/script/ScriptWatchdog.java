@@ -0,0 +1,131 @@
+package net.voldrich.graal.async.script;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.Disposable;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.Comparator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Single thread watching deadlines of all script executions.
+ * Deadlines are kept sorted, so the thread only wakes up when the earliest deadline expires or a new earlier one
+ * is registered. Expired actions are executed on bounded elastic scheduler as cancelling a context can block until
+ * the script thread leaves it.
+ **/
+@Slf4j
+final class ScriptWatchdog {
+
+    private static final ScriptWatchdog SHARED = new ScriptWatchdog("Script-watchdog");
+
+    private static final long MAX_PARK_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final String name;
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final ConcurrentSkipListSet<Deadline> deadlines = new ConcurrentSkipListSet<>(
+            Comparator.<Deadline>comparingLong(deadline -> deadline.expiresAt)
+                    .thenComparingLong(deadline -> deadline.sequence));
+
+    private volatile Thread thread;
+
+    private ScriptWatchdog(String name) {
+        this.name = name;
+    }
+
+    static ScriptWatchdog shared() {
+        return SHARED;
+    }
+
+    /**
+     * Runs the action once the deadline expires, unless the returned handle is disposed before.
+     **/
+    Disposable schedule(long expiresAtNanos, Runnable action) {
+        Deadline deadline = new Deadline(expiresAtNanos, sequence.incrementAndGet(), action);
+        deadlines.add(deadline);
+        Thread watchdogThread = ensureStarted();
+        if (firstOrNull() == deadline) {
+            LockSupport.unpark(watchdogThread);
+        }
+        return deadline;
+    }
+
+    private Thread ensureStarted() {
+        Thread watchdogThread = this.thread;
+        if (watchdogThread == null) {
+            synchronized (this) {
+                watchdogThread = this.thread;
+                if (watchdogThread == null) {
+                    watchdogThread = new Thread(this::run, name);
+                    watchdogThread.setDaemon(true);
+                    watchdogThread.start();
+                    this.thread = watchdogThread;
+                }
+            }
+        }
+        return watchdogThread;
+    }
+
+    private void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            Deadline first = firstOrNull();
+            if (first == null) {
+                LockSupport.parkNanos(this, MAX_PARK_NANOS);
+                continue;
+            }
+            long remaining = first.expiresAt - System.nanoTime();
+            if (remaining > 0) {
+                LockSupport.parkNanos(this, Math.min(remaining, MAX_PARK_NANOS));
+            } else if (deadlines.remove(first)) {
+                fire(first);
+            }
+        }
+    }
+
+    private Deadline firstOrNull() {
+        try {
+            return deadlines.first();
+        } catch (NoSuchElementException e) {
+            return null;
+        }
+    }
+
+    private void fire(Deadline deadline) {
+        try {
+            Schedulers.boundedElastic().schedule(deadline.action);
+        } catch (Exception e) {
+            log.warn("Failed to run expired deadline action", e);
+        }
+    }
+
+    private final class Deadline implements Disposable {
+        private final long expiresAt;
+        private final long sequence;
+        private final Runnable action;
+        private volatile boolean disposed;
+
+        private Deadline(long expiresAt, long sequence, Runnable action) {
+            this.expiresAt = expiresAt;
+            this.sequence = sequence;
+            this.action = action;
+        }
+
+        @Override
+        public void dispose() {
+            if (!disposed) {
+                disposed = true;
+                deadlines.remove(this);
+            }
+        }
+
+        @Override
+        public boolean isDisposed() {
+            return disposed;
+        }
+    }
+}
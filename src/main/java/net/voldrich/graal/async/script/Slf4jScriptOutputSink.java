@@ -0,0 +1,25 @@
+package net.voldrich.graal.async.script;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Logs script output lines at info level together with the transaction id of the execution.
+ **/
+public class Slf4jScriptOutputSink implements ScriptOutputSink {
+
+    private final Logger logger;
+
+    public Slf4jScriptOutputSink() {
+        this(LoggerFactory.getLogger("net.voldrich.graal.async.script.output"));
+    }
+
+    public Slf4jScriptOutputSink(Logger logger) {
+        this.logger = logger;
+    }
+
+    @Override
+    public void writeLine(String transactionId, String line) {
+        logger.info("[{}] {}", transactionId, line);
+    }
+}
@@ -0,0 +1,16 @@
+package net.voldrich.graal.async.script;
+
+/**
+ * When JS stack is captured for async host operations started by {@link ScriptContext#executeAsPromise}.
+ * Capturing the stack creates a JS Error on every host call, the stack is only used if the operation fails.
+ **/
+public enum StackCapturePolicy {
+    /** Stack is captured for every operation. */
+    ALWAYS,
+    /** Stack is never captured, failed operations report only the operation description. */
+    NEVER,
+    /** Stack is captured for a random sample of operations, others behave as {@link #ON_FAILURE}. */
+    SAMPLED,
+    /** Stack is not captured, failed operations report operation description and its sequence number in the execution. */
+    ON_FAILURE
+}
@@ -0,0 +1,69 @@
+package net.voldrich.graal.async.script;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Passes complete output lines to the sink. Only the current unfinished line is buffered.
+ **/
+class StreamingOutputBuffer extends ScriptOutputBuffer {
+
+    private final ScriptOutputSink sink;
+
+    private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+    private volatile String transactionId;
+
+    StreamingOutputBuffer(ScriptOutputSink sink) {
+        this.sink = sink;
+    }
+
+    @Override
+    public synchronized void write(int b) {
+        if (b == '\n') {
+            flushLine();
+        } else {
+            line.write(b);
+        }
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) {
+        int lineStart = off;
+        for (int i = off; i < off + len; i++) {
+            if (b[i] == '\n') {
+                line.write(b, lineStart, i - lineStart);
+                flushLine();
+                lineStart = i + 1;
+            }
+        }
+        line.write(b, lineStart, off + len - lineStart);
+    }
+
+    private void flushLine() {
+        sink.writeLine(transactionId, line.toString(Charset.defaultCharset()));
+        line.reset();
+    }
+
+    @Override
+    public String getOutput() {
+        return "";
+    }
+
+    @Override
+    public void startExecution(String transactionId) {
+        this.transactionId = transactionId;
+    }
+
+    @Override
+    public synchronized void reset() {
+        if (line.size() > 0) {
+            flushLine();
+        }
+    }
+
+    @Override
+    public void release() {
+        reset();
+    }
+}
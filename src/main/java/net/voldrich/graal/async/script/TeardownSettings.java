@@ -0,0 +1,21 @@
+package net.voldrich.graal.async.script;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+
+/**
+ * Deferred closing of contexts released after execution, see {@link ContextTeardown}.
+ * Closes are queued per script thread and executed after the request work waiting on the thread.
+ **/
+@Getter
+@Setter
+@Accessors(chain = true)
+public class TeardownSettings {
+
+    /** Maximum number of contexts closed by one task while other tasks wait, all are closed when the thread is idle. */
+    private int maxClosesPerTask = 4;
+
+    /** Maximum number of contexts waiting to be closed per script thread, further contexts are closed immediately. */
+    private int maxPendingCloses = 64;
+}
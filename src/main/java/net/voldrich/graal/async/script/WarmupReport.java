@@ -0,0 +1,62 @@
+package net.voldrich.graal.async.script;
+
+import lombok.Getter;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Result of the warm-up, see {@link ScriptWarmup}.
+ **/
+@Getter
+public class WarmupReport {
+
+    private final Duration duration;
+
+    private final List<ScriptResult> scripts;
+
+    WarmupReport(Duration duration, List<ScriptResult> scripts) {
+        this.duration = duration;
+        this.scripts = scripts;
+    }
+
+    @Override
+    public String toString() {
+        return "Warm-up took " + duration.toMillis() + " ms " + scripts;
+    }
+
+    /**
+     * Median latency of the first and the last round of one script. Error is set when the script failed,
+     * its warm-up then ends and does not prevent readiness.
+     **/
+    @Getter
+    public static class ScriptResult {
+        private final String name;
+        private final int rounds;
+        private final Duration initialLatency;
+        private final Duration finalLatency;
+        private final boolean stabilized;
+        private final Throwable error;
+
+        ScriptResult(String name, int rounds, Duration initialLatency, Duration finalLatency, boolean stabilized,
+                     Throwable error) {
+            this.name = name;
+            this.rounds = rounds;
+            this.initialLatency = initialLatency;
+            this.finalLatency = finalLatency;
+            this.stabilized = stabilized;
+            this.error = error;
+        }
+
+        @Override
+        public String toString() {
+            return name + "[rounds=" + rounds + ", initial=" + toMicros(initialLatency) + " us, final="
+                    + toMicros(finalLatency) + " us, stabilized=" + stabilized
+                    + (error != null ? ", error=" + error.getMessage() : "") + "]";
+        }
+
+        private static long toMicros(Duration duration) {
+            return duration != null ? duration.toNanos() / 1000 : -1;
+        }
+    }
+}
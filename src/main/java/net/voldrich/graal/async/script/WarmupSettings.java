@@ -0,0 +1,65 @@
+package net.voldrich.graal.async.script;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Scripts executed before the executor reports it is ready, see {@link ScriptWarmup}.
+ * Each script is executed in rounds, a round executes it on every script scheduler in parallel.
+ * Warm-up of a script ends when the median latency of consecutive rounds stabilizes or after max rounds.
+ **/
+@Getter
+@Setter
+@Accessors(chain = true)
+public class WarmupSettings {
+
+    private final List<WarmupScript> scripts = new ArrayList<>();
+
+    /** Executions of the script on each script scheduler in one round. */
+    private int executionsPerRound = 4;
+
+    private int minRounds = 3;
+
+    private int maxRounds = 50;
+
+    /** Maximum relative change of the median round latency considered stable. */
+    private double stableTolerance = 0.1;
+
+    /** Number of consecutive stable rounds ending the warm-up of a script. */
+    private int stableRounds = 2;
+
+    /** Starts the warm-up when the executor is built, otherwise it is started by {@link ScriptWarmup#start()}. */
+    private boolean autoStart = true;
+
+    /**
+     * Adds a script evaluated by the handler. Handler provides sample input and mocked host bindings.
+     **/
+    public WarmupSettings addScript(String name, ScriptHandler<?> scriptHandler) {
+        return addScript(name, null, scriptHandler);
+    }
+
+    /**
+     * Adds current version of a script registered in the script registry, the version is resolved in each round.
+     **/
+    public WarmupSettings addScript(String name, String scriptId, ScriptHandler<?> scriptHandler) {
+        scripts.add(new WarmupScript(name, scriptId, scriptHandler));
+        return this;
+    }
+
+    @Getter
+    public static class WarmupScript {
+        private final String name;
+        private final String scriptId;
+        private final ScriptHandler<?> scriptHandler;
+
+        WarmupScript(String name, String scriptId, ScriptHandler<?> scriptHandler) {
+            this.name = name;
+            this.scriptId = scriptId;
+            this.scriptHandler = scriptHandler;
+        }
+    }
+}
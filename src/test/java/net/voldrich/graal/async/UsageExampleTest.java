@@ -25,6 +25,9 @@ public class UsageExampleTest {
         log.info("Script finished {}", resultStr);
 
         assertEquals("Hello simple world", resultStr);
+
+        executor.dispose();
+        executor.getScriptSchedulers().dispose();
     }
 
     @Test
@@ -49,5 +52,8 @@ public class UsageExampleTest {
         log.info("Script finished {}", resultStr);
 
         assertEquals("Hello async world after timeout", resultStr);
+
+        executor.dispose();
+        executor.getScriptSchedulers().dispose();
     }
 }
@@ -0,0 +1,23 @@
+package net.voldrich.graal.async.api;
+
+import net.voldrich.graal.async.script.ScriptContext;
+import org.graalvm.polyglot.HostAccess;
+import org.graalvm.polyglot.Value;
+
+/**
+ * Mocked http client passing an operation key, identical concurrent requests of all scripts share one response.
+ **/
+public class ScriptSharedHttpClient {
+    private final ScriptContext scriptContext;
+    private final MockedHttpClient mockedHttpClient;
+
+    public ScriptSharedHttpClient(ScriptContext scriptContext, MockedHttpClient mockedHttpClient) {
+        this.scriptContext = scriptContext;
+        this.mockedHttpClient = mockedHttpClient;
+    }
+
+    @HostAccess.Export
+    public Value get(String url) {
+        return scriptContext.executeAsPromise(mockedHttpClient.get(url), "get " + url, "GET " + url);
+    }
+}
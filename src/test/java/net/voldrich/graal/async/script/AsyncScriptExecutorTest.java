@@ -1,20 +1,53 @@
 package net.voldrich.graal.async.script;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import net.voldrich.graal.async.ScriptTestUtils;
 import net.voldrich.graal.async.api.MockedHttpClient;
 import net.voldrich.graal.async.api.ScriptMockedHttpResponse;
+import net.voldrich.graal.async.api.ScriptSharedHttpClient;
+import net.voldrich.graal.async.api.ScriptTimeout;
+import org.graalvm.polyglot.Source;
+import org.graalvm.polyglot.proxy.ProxyExecutable;
 import org.hamcrest.Matcher;
 import org.hamcrest.Matchers;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.skyscreamer.jsonassert.JSONAssert;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
 import reactor.test.StepVerifier;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
 @Slf4j
 class AsyncScriptExecutorTest {
@@ -23,15 +56,26 @@ class AsyncScriptExecutorTest {
 
     private MockedHttpClient mockedHttpClient;
 
+    private final List<AsyncScriptExecutor> builtExecutors = new ArrayList<>();
+
     @BeforeEach
     void setUp() {
-        executor = new AsyncScriptExecutor.Builder().build();
+        executor = disposeAfterTest(new AsyncScriptExecutor.Builder().build());
         mockedHttpClient = new MockedHttpClient();
     }
 
     @AfterEach
     void tearDown() {
-        executor.getScriptSchedulers().dispose();
+        // executors do not dispose their schedulers, they are shared by several executors of a test
+        for (AsyncScriptExecutor builtExecutor : builtExecutors) {
+            builtExecutor.dispose();
+            builtExecutor.getScriptSchedulers().dispose();
+        }
+    }
+
+    private AsyncScriptExecutor disposeAfterTest(AsyncScriptExecutor builtExecutor) {
+        builtExecutors.add(builtExecutor);
+        return builtExecutor;
     }
 
     @Test
@@ -111,6 +155,832 @@ class AsyncScriptExecutorTest {
                 .verify();
     }
 
+    @Test
+    void testPooledContextIsReusedAndReset() {
+        AsyncScriptExecutor pooledExecutor = disposeAfterTest(new AsyncScriptExecutor.Builder()
+                .setScriptSchedulers(new ScriptSchedulers(1))
+                .setContextPoolSettings(new ContextPoolSettings())
+                .build());
+        AtomicInteger initiatedContexts = new AtomicInteger();
+        ScriptHandler<String> scriptHandler = new InlineScriptHandler(
+                "(function() { const previous = typeof leaked; globalThis.leaked = 1; return previous; })")
+                .setContextReuseKey("pooled")
+                .setOnInitiate(scriptContext -> initiatedContexts.incrementAndGet());
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals("undefined", pooledExecutor.executeScript(scriptHandler).block());
+        }
+        assertEquals(1, initiatedContexts.get());
+    }
+
+    @Test
+    void testPooledContextDoesNotLeakScriptState() {
+        AsyncScriptExecutor pooledExecutor = disposeAfterTest(new AsyncScriptExecutor.Builder()
+                .setScriptSchedulers(new ScriptSchedulers(1))
+                .setContextPoolSettings(new ContextPoolSettings())
+                .build());
+        AtomicInteger initiatedContexts = new AtomicInteger();
+        Function<String, ScriptHandler<String>> pooledHandler = script -> new InlineScriptHandler(script)
+                .bind("config", scriptContext -> "initial")
+                .setContextReuseKey("pooled")
+                .setOnInitiate(scriptContext -> initiatedContexts.incrementAndGet());
+        List<ScriptHandler<String>> leakingHandlers = List.of(
+                pooledHandler.apply("const value = 'declared'; (function() { return value; })"),
+                pooledHandler.apply("(function() { const previous = typeof Array.prototype.leaked;"
+                        + " Array.prototype.leaked = 1; return previous; })"),
+                pooledHandler.apply("(function() { const previous = config; config = 'changed'; return previous; })"),
+                pooledHandler.apply("(function() { const previous = typeof JSON.parse;"
+                        + " JSON.parse = undefined; return previous; })"));
+
+        assertEquals(List.of("declared", "undefined", "initial", "function"), executeTwice(pooledExecutor, leakingHandlers));
+        // contexts modified by the scripts are closed instead of being reused
+        assertEquals(8, initiatedContexts.get());
+    }
+
+    private static List<String> executeTwice(AsyncScriptExecutor pooledExecutor, List<ScriptHandler<String>> handlers) {
+        List<String> results = new ArrayList<>();
+        for (ScriptHandler<String> scriptHandler : handlers) {
+            String first = pooledExecutor.executeScript(scriptHandler).block();
+            assertEquals(first, pooledExecutor.executeScript(scriptHandler).block());
+            results.add(first);
+        }
+        return results;
+    }
+
+    @Test
+    void testRegisteredScriptHotSwap() {
+        ScriptRegistry registry = executor.getScriptRegistry();
+        ScriptVersion first = registry.publish("greeting", "(function() { return 'Hello v1' })").block();
+        assertEquals("Hello v1", executor.executeScript("greeting", new BaseScriptHandler()).block());
+
+        registry.publish("greeting", "(function() { return 'Hello v2' })").block();
+        registry.publish("greeting", "(function() { return 'Hello v2' })").block();
+        assertEquals("Hello v2", executor.executeScript("greeting", new BaseScriptHandler()).block());
+        assertEquals(2, registry.getCachedVersionCount());
+
+        registry.activate("greeting", first.getContentHash());
+        assertEquals("Hello v1", executor.executeScript("greeting", new BaseScriptHandler()).block());
+
+        StepVerifier.create(executor.executeScript("unknown", new BaseScriptHandler()))
+                .expectError(IllegalArgumentException.class)
+                .verify();
+    }
+
+    @Test
+    void testRegistryRejectsInvalidScript() {
+        ScriptRegistry registry = executor.getScriptRegistry();
+        registry.publish("validated", "(function() { return 'valid' })").block();
+
+        StepVerifier.create(registry.publish("validated", "(function() { return 'invalid' )"))
+                .expectErrorMatches(error -> error.getMessage().contains("SyntaxError"))
+                .verify();
+        assertEquals("valid", executor.executeScript("validated", new BaseScriptHandler()).block());
+    }
+
+    @Test
+    void testLeastLoadedSchedulerSelection() {
+        ScriptSchedulers scriptSchedulers = new ScriptSchedulers(2, SchedulerSelection.LEAST_LOADED);
+        AsyncScriptExecutor loadAwareExecutor = disposeAfterTest(new AsyncScriptExecutor.Builder()
+                .setScriptSchedulers(scriptSchedulers)
+                .build());
+        Mono<String> running = loadAwareExecutor.executeScript(
+                new TestScriptHandler("scripts/test-script-timeout.js", null)).cache();
+        running.subscribe();
+
+        ScriptScheduler busyScheduler = scriptSchedulers.getSchedulers().stream()
+                .filter(scheduler -> scheduler.getActiveExecutions() == 1)
+                .findFirst()
+                .orElseThrow();
+        assertNotSame(busyScheduler, scriptSchedulers.selectScheduler());
+
+        StepVerifier.create(running).expectNextCount(1).verifyComplete();
+    }
+
+    @Test
+    void testAdmissionRejectsAndQueuesExecutions() {
+        AsyncScriptExecutor limitedExecutor = disposeAfterTest(new AsyncScriptExecutor.Builder()
+                .setScriptSchedulers(executor.getScriptSchedulers())
+                .setAdmissionSettings(new AdmissionSettings()
+                        .setMaxActiveExecutions(1)
+                        .setMaxWaitingExecutions(1)
+                        .setWaitTimeout(Duration.ofSeconds(5)))
+                .build());
+        AsyncScriptExecutor rejectingExecutor = disposeAfterTest(new AsyncScriptExecutor.Builder()
+                .setScriptSchedulers(executor.getScriptSchedulers())
+                .setAdmissionSettings(new AdmissionSettings().setMaxActiveExecutions(1))
+                .build());
+
+        Mono<String> running = rejectingExecutor.executeScript(
+                new TestScriptHandler("scripts/test-script-timeout.js", null)).cache();
+        running.subscribe();
+        StepVerifier.create(rejectingExecutor.executeScript(new TestScriptHandler("scripts/test-script-timeout.js", null)))
+                .expectError(ScriptRejectedException.class)
+                .verify();
+        StepVerifier.create(running).expectNextCount(1).verifyComplete();
+
+        Mono<String> first = limitedExecutor.executeScript(new TestScriptHandler("scripts/test-script-timeout.js", null));
+        Mono<String> waiting = limitedExecutor.executeScript(new TestScriptHandler("scripts/test-script-timeout.js", null));
+        Mono<String> overflow = limitedExecutor.executeScript(new TestScriptHandler("scripts/test-script-timeout.js", null));
+        StepVerifier.create(Flux.merge(first, waiting, overflow.onErrorReturn(ScriptRejectedException.class, "rejected")))
+                .expectNextCount(3)
+                .verifyComplete();
+        assertEquals(1, limitedExecutor.getExecutionAdmission().getRejectedExecutions());
+    }
+
+    @Test
+    void testScriptExecutionTimeout() {
+        AsyncScriptExecutor limitedExecutor = disposeAfterTest(new AsyncScriptExecutor.Builder()
+                .setScriptSchedulers(executor.getScriptSchedulers())
+                .setExecutionTimeout(Duration.ofMillis(500))
+                .build());
+        // first context creation on a cold engine can take longer than the timeout
+        executeScript("scripts/test-script-timeout.js").block();
+
+        StepVerifier.create(limitedExecutor.executeScript(new TestScriptHandler("scripts/test-script-neverending.js", null)))
+                .expectErrorSatisfies(verifyTimeoutException(ExecutionPhase.PROMISE_RESOLUTION, "Execution timeout"))
+                .verify(Duration.ofSeconds(5));
+
+        StepVerifier.create(limitedExecutor.executeScript(new TestScriptHandler("scripts/test-script-infinite-loop.js", null)))
+                .expectErrorSatisfies(verifyTimeoutException(ExecutionPhase.EVALUATION, "Execution timeout"))
+                .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void testScriptStatementLimit() {
+        AsyncScriptExecutor limitedExecutor = disposeAfterTest(new AsyncScriptExecutor.Builder()
+                .setScriptSchedulers(executor.getScriptSchedulers())
+                .setStatementLimit(1000)
+                .build());
+
+        StepVerifier.create(limitedExecutor.executeScript(new TestScriptHandler("scripts/test-script-infinite-loop.js", null)))
+                .expectErrorSatisfies(verifyTimeoutException(ExecutionPhase.EVALUATION, "Statement limit of 1000"))
+                .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void testBoundedOutputKeepsTail() throws IOException {
+        ScriptOutputBuffer buffer = ScriptOutputCapture.bounded(16).open();
+        buffer.write("first line\nsecond line\n".getBytes(StandardCharsets.UTF_8));
+        assertEquals("[... 7 bytes truncated ...]\nine\nsecond line\n", buffer.getOutput());
+
+        buffer.reset();
+        buffer.write("short".getBytes(StandardCharsets.UTF_8));
+        assertEquals("short", buffer.getOutput());
+    }
+
+    @Test
+    void testStreamingOutput() {
+        List<String> lines = new CopyOnWriteArrayList<>();
+        AsyncScriptExecutor streamingExecutor = disposeAfterTest(new AsyncScriptExecutor.Builder()
+                .setScriptSchedulers(executor.getScriptSchedulers())
+                .setScriptOutputCapture(ScriptOutputCapture.streaming((transactionId, line) -> lines.add(line)))
+                .build());
+        mockedHttpClient.addResponse("/company/info", new ScriptMockedHttpResponse(200, "json/company-info.json", 10));
+        mockedHttpClient.addResponse("/company/ceo", new ScriptMockedHttpResponse(200, "json/ceo-list.json", 10));
+
+        streamingExecutor.executeScript(new TestScriptHandler("scripts/test-http-get.js", mockedHttpClient)).block();
+        assertEquals(List.of("Status for company info: 200", "Status for ceo list: 200"), lines);
+    }
+
+    @Test
+    void testStackCaptureOnFailureReportsOperation() {
+        AsyncScriptExecutor onFailureExecutor = disposeAfterTest(new AsyncScriptExecutor.Builder()
+                .setScriptSchedulers(executor.getScriptSchedulers())
+                .setStackCapturePolicy(StackCapturePolicy.ON_FAILURE)
+                .build());
+        ScriptHandler<String> scriptHandler = new InlineScriptHandler("(async function() { await succeed(); await fail(); })")
+                .bindFunction("succeed", (scriptContext, arguments) ->
+                        scriptContext.executeAsPromise(Mono.just("ok"), "succeed"))
+                .bindFunction("fail", (scriptContext, arguments) ->
+                        scriptContext.executeAsPromise(Mono.error(new IllegalStateException("failed")), "fail"));
+
+        StepVerifier.create(onFailureExecutor.executeScript(scriptHandler))
+                .expectErrorSatisfies(exception -> {
+                    String stack = ((ScriptExecutionException) exception).getStack();
+                    if (!stack.startsWith("fail\n") || !stack.contains("async operation #2")) {
+                        throw new AssertionError("Unexpected stack " + stack);
+                    }
+                })
+                .verify();
+    }
+
+    @Test
+    void testSynchronousAndEmptyOperationsResolvePromises() {
+        ScriptHandler<String> scriptHandler = new InlineScriptHandler(
+                "(async function() { const a = await now(1); const b = await nothing(); const c = await later(2);"
+                        + " return { sum: a + c, empty: b === undefined }; })")
+                .bindFunction("now", (scriptContext, arguments) ->
+                        scriptContext.executeAsPromise(Mono.just(arguments[0].asInt()), "now"))
+                .bindFunction("nothing", (scriptContext, arguments) ->
+                        scriptContext.executeAsPromise(Mono.empty(), "nothing"))
+                .bindFunction("later", (scriptContext, arguments) ->
+                        scriptContext.executeAsPromise(Mono.just(arguments[0].asInt())
+                                .delayElement(Duration.ofMillis(10)), "later"));
+
+        StepVerifier.create(executor.executeScript(scriptHandler))
+                .expectNext("{\"sum\":3,\"empty\":true}")
+                .verifyComplete();
+    }
+
+    @Test
+    void testStreamedScriptPausesWithoutDemand() {
+        AtomicInteger emitted = new AtomicInteger();
+        CountDownLatch thirdEmitted = new CountDownLatch(1);
+        ScriptHandler<String> scriptHandler = new InlineScriptHandler(
+                "(async function(emit) { for (let i = 0; i < 5; i++) { await emit({ i }); } })")
+                .setOnTransform(response -> {
+                    if (emitted.incrementAndGet() == 3) {
+                        thirdEmitted.countDown();
+                    }
+                });
+
+        StepVerifier.create(executor.executeScriptAsFlux(scriptHandler), 0)
+                .thenRequest(2)
+                .expectNext("{\"i\":0}", "{\"i\":1}")
+                // first item was emitted before any demand, third one is buffered and the script waits
+                .then(() -> assertTrue(await(thirdEmitted)))
+                .then(() -> assertEquals(3, emitted.get()))
+                .thenRequest(3)
+                .expectNext("{\"i\":2}", "{\"i\":3}", "{\"i\":4}")
+                .verifyComplete();
+    }
+
+    @Test
+    void testStreamedScriptResumesAllPendingEmits() {
+        CountDownLatch bothEmitted = new CountDownLatch(2);
+        ScriptHandler<String> scriptHandler = new InlineScriptHandler(
+                "(async function(emit) { const first = emit(1); const second = emit(2);"
+                        + " await Promise.all([first, second]); await emit(3); })")
+                .setOnTransform(response -> bothEmitted.countDown());
+
+        StepVerifier.create(executor.executeScriptAsFlux(scriptHandler), 0)
+                // both emits are buffered without demand, neither of their promises is resolved yet
+                .then(() -> assertTrue(await(bothEmitted)))
+                .thenRequest(2)
+                .expectNext("1", "2")
+                .thenRequest(1)
+                .expectNext("3")
+                .expectComplete()
+                .verify(Duration.ofSeconds(5));
+    }
+
+    private static boolean await(CountDownLatch latch) {
+        try {
+            return latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    @Test
+    void testStreamedAsyncGenerator() {
+        BaseScriptHandler scriptHandler = new BaseScriptHandler(ScriptUtils.parseScript(
+                "(async function*() { for (let i = 0; i < 3; i++) { yield i; } })"));
+
+        StepVerifier.create(executor.executeScriptAsFlux(scriptHandler))
+                .expectNext("0", "1", "2")
+                .verifyComplete();
+
+        StepVerifier.create(executor.executeScriptAsFlux(scriptHandler).take(1))
+                .expectNext("0")
+                .verifyComplete();
+
+        StepVerifier.create(executor.executeScriptAsFlux(new BaseScriptHandler(ScriptUtils.parseScript(
+                "(async function*() { yield 1; throw new Error('generator failed'); })"))))
+                .expectNext("1")
+                .expectError(ScriptExecutionException.class)
+                .verify();
+    }
+
+    @Test
+    void testBatchExecutionKeepsOrderAndIsolatesErrors() {
+        AtomicInteger initiatedContexts = new AtomicInteger();
+        InlineBatchScriptHandler<Integer> scriptHandler = new InlineBatchScriptHandler<>(
+                "(async function(input) { if (input === 3) { throw new Error('bad input ' + input); }"
+                        + " if (input % 2 === 1) { await Promise.resolve(); } return input * 2; })");
+        scriptHandler.setOnInitiate(scriptContext -> initiatedContexts.incrementAndGet());
+
+        List<BatchResult<Integer, String>> results = executor.executeBatch(Flux.range(1, 5), scriptHandler,
+                new BatchSettings().setMaxBatchSize(2)).collectList().block();
+
+        assertEquals(3, initiatedContexts.get());
+        assertEquals(List.of(1, 2, 3, 4, 5), results.stream().map(BatchResult::getInput).collect(Collectors.toList()));
+        assertEquals(Arrays.asList("2", "4", null, "8", "10"),
+                results.stream().map(BatchResult::getValue).collect(Collectors.toList()));
+        assertFalse(results.get(2).isSuccess());
+    }
+
+    @Test
+    void testBatchExecutionWaitsForSlowBatch() {
+        InlineBatchScriptHandler<Integer> scriptHandler = new InlineBatchScriptHandler<>(
+                "(async function(input) { return await timeout.ms(200, input * 2); })");
+        scriptHandler.bind("timeout", ScriptTimeout::new);
+
+        // windows close while the only batch slot is busy, closed batches wait for the slot
+        Flux<Integer> inputs = Flux.range(1, 6).delayElements(Duration.ofMillis(30));
+        List<BatchResult<Integer, String>> results = executor.executeBatch(inputs, scriptHandler, new BatchSettings()
+                .setMaxBatchSize(2)
+                .setMaxBatchWindow(Duration.ofMillis(10))
+                .setMaxConcurrentBatches(1)).collectList().block(Duration.ofSeconds(10));
+
+        assertEquals(List.of(1, 2, 3, 4, 5, 6), results.stream().map(BatchResult::getInput).collect(Collectors.toList()));
+        assertEquals(List.of("2", "4", "6", "8", "10", "12"),
+                results.stream().map(BatchResult::getValue).collect(Collectors.toList()));
+    }
+
+    @Test
+    void testBatchExecutionBackpressuresInputs() {
+        InlineBatchScriptHandler<Integer> scriptHandler = new InlineBatchScriptHandler<>(
+                "(async function(input) { return await timeout.ms(20, input); })");
+        scriptHandler.bind("timeout", ScriptTimeout::new);
+
+        AtomicInteger produced = new AtomicInteger();
+        AtomicInteger producedAtFirstResult = new AtomicInteger(-1);
+        List<BatchResult<Integer, String>> results = executor.executeBatch(
+                Flux.range(1, 100).doOnNext(input -> produced.incrementAndGet()), scriptHandler, new BatchSettings()
+                        .setMaxBatchSize(2)
+                        .setMaxConcurrentBatches(1))
+                .doOnNext(result -> producedAtFirstResult.compareAndSet(-1, produced.get()))
+                .collectList().block(Duration.ofSeconds(10));
+
+        assertEquals(100, results.size());
+        // executed batch and the next one being filled, the rest of the inputs is not requested yet
+        assertTrue(producedAtFirstResult.get() <= 4, "Produced " + producedAtFirstResult.get());
+    }
+
+    @Test
+    void testJsonBytesMatchStringify() {
+        String script = "(async function() { const shared = { n: -0 }; return {"
+                + " numbers: [1, -2, 1.5, 1e21, 1e-7, 0.000001, 123456789012, NaN, Infinity, 2 ** 53 + 2],"
+                + " text: 'quote \\\" slash \\\\ \\n tab \\t \\u0001 \\u00e9 \\u20ac \\ud83d\\ude00 \\ud800',"
+                + " flags: [true, false, null, undefined, function() {}], skipped: undefined, fn: function() {},"
+                + " date: new Date(0), custom: { toJSON: (key) => 'key ' + key }, a: shared, b: [shared], 10: 'ten',"
+                + " large: Array.from({ length: 2000 }, (v, i) => ({ id: i, text: '\\u00e9 ' + i })) }; })";
+        String expected = executor.executeScript(new BaseScriptHandler(ScriptUtils.parseScript(script))).block();
+        byte[] bytes = executor.executeScript(new JsonBytesScriptHandler(ScriptUtils.parseScript(script))).block();
+
+        assertEquals(expected, new String(bytes, StandardCharsets.UTF_8));
+
+        StepVerifier.create(executor.executeScript(new JsonBytesScriptHandler(ScriptUtils.parseScript(
+                "(function() { const a = { items: [] }; a.items.push({ parent: a }); return a; })"))))
+                .expectErrorSatisfies(exception -> assertTrue(
+                        exception.getMessage().contains("circular structure"), exception.getMessage()))
+                .verify();
+    }
+
+    @Test
+    void testReadOnlyInputProxies() {
+        Map<String, Object> input = Map.of(
+                "name", "company",
+                "employees", List.of(Map.of("name", "Steve", "age", 56), Map.of("name", "Bob", "age", 65)),
+                "address", Map.of("city", "Prague"));
+        ScriptHandler<String> scriptHandler = new InlineScriptHandler(
+                "(function() { 'use strict'; let readOnly = false;"
+                        + " try { input.name = 'changed'; } catch (e) { readOnly = true; }"
+                        + " return { name: input.name, city: input.address.city, same: input.address === input.address,"
+                        + " employees: input.employees.length, second: input.employees[1].name,"
+                        + " ages: input.employees[0].age + input.employees[1].age, readOnly,"
+                        + " missing: input.unknown === undefined, copy: JSON.parse(JSON.stringify(input.address)) }; })")
+                .bind("input", scriptContext -> scriptContext.wrapInput(input));
+
+        StepVerifier.create(executor.executeScript(scriptHandler))
+                .expectNext("{\"name\":\"company\",\"city\":\"Prague\",\"same\":true,\"employees\":2,"
+                        + "\"second\":\"Bob\",\"ages\":121,\"readOnly\":true,\"missing\":true,"
+                        + "\"copy\":{\"city\":\"Prague\"}}")
+                .verifyComplete();
+    }
+
+    @Test
+    void testReadOnlyInputWritesAndBigNumbers() {
+        Map<String, Object> input = Map.of(
+                "name", "company",
+                "amount", new BigDecimal("12345678901234567.89"),
+                "id", new BigInteger("123456789012345678901234567890"));
+        ScriptHandler<String> scriptHandler = new InlineScriptHandler("(function() {"
+                + " const strict = (function() { 'use strict'; try { input.name = 'changed'; return 'written'; }"
+                + " catch (e) { return e instanceof TypeError; } })();"
+                + " let sloppy; try { input.name = 'changed'; sloppy = 'written'; } catch (e) {"
+                + " sloppy = e instanceof TypeError; }"
+                + " return { strict, sloppy, name: input.name, amount: input.amount, id: input.id }; })")
+                .bind("input", scriptContext -> scriptContext.wrapInput(input));
+
+        StepVerifier.create(executor.executeScript(scriptHandler))
+                .expectNext("{\"strict\":true,\"sloppy\":true,\"name\":\"company\","
+                        + "\"amount\":\"12345678901234567.89\",\"id\":\"123456789012345678901234567890\"}")
+                .verifyComplete();
+    }
+
+    @Test
+    void testVirtualSchedulersRequireJdk21() {
+        assumeFalse(VirtualThreads.isSupported(), "Virtual threads are supported");
+        assertThrows(UnsupportedOperationException.class, () -> ScriptSchedulers.virtual(4));
+    }
+
+    @Test
+    void testVirtualSchedulersBlockOnlyTheirOwnThread() {
+        assumeTrue(VirtualThreads.isSupported(), "Virtual threads require JDK 21");
+        // surefire limits carriers to one thread, see pom.xml
+        assertEquals("1", System.getProperty("jdk.virtualThreadScheduler.parallelism"));
+        ScriptSchedulers virtualSchedulers = ScriptSchedulers.virtual(4, SchedulerSelection.ROUND_ROBIN);
+        AsyncScriptExecutor virtualExecutor = disposeAfterTest(new AsyncScriptExecutor.Builder()
+                .setScriptSchedulers(virtualSchedulers)
+                .build());
+        // every script blocks until all of them are blocked, possible only if blocked scripts release the carrier
+        CountDownLatch allBlocked = new CountDownLatch(4);
+        ScriptHandler<String> scriptHandler = new InlineScriptHandler("(function() { return blockUntilAllBlocked(); })")
+                .bindFunction("blockUntilAllBlocked", (scriptContext, arguments) -> {
+                    allBlocked.countDown();
+                    try {
+                        return allBlocked.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                });
+
+        assertEquals(List.of("true", "true", "true", "true"), Flux.range(0, 4)
+                .flatMap(index -> virtualExecutor.executeScript(scriptHandler))
+                .collectList()
+                .block());
+    }
+
+    @Test
+    void testEngineShardsRouteByKeyAndRetire() throws InterruptedException {
+        EngineShards engineShards = new EngineShards(3);
+        AsyncScriptExecutor shardedExecutor = disposeAfterTest(new AsyncScriptExecutor.Builder()
+                .setScriptSchedulers(executor.getScriptSchedulers())
+                .setEngineShards(engineShards)
+                .build());
+        Function<String, ScriptHandler<String>> tenantHandler = tenant ->
+                new InlineScriptHandler("(function() { return 1; })").setShardKey(tenant);
+
+        EngineShard shard = engineShards.route("tenant-a");
+        for (int i = 0; i < 3; i++) {
+            assertEquals("1", shardedExecutor.executeScript(tenantHandler.apply("tenant-a")).block());
+        }
+        assertEquals(3, shard.getTotalContexts());
+        assertEquals(3, engineShards.getShards().stream().mapToLong(EngineShard::getTotalContexts).sum());
+
+        assertTrue(engineShards.retireShard(shard.getName()));
+        assertNotSame(shard, engineShards.route("tenant-a"));
+        assertEquals("1", shardedExecutor.executeScript(tenantHandler.apply("tenant-a")).block());
+        assertEquals(3, shard.getTotalContexts());
+
+        // engine of the retired shard is closed once its contexts are released
+        for (int i = 0; i < 100 && shard.getOpenContexts() > 0; i++) {
+            Thread.sleep(10);
+        }
+        assertFalse(shard.tryOpenContext());
+    }
+
+    @Test
+    void testRegistryParsesScriptOnEveryShard() {
+        EngineShards engineShards = new EngineShards(3);
+        AsyncScriptExecutor shardedExecutor = disposeAfterTest(new AsyncScriptExecutor.Builder()
+                .setScriptSchedulers(executor.getScriptSchedulers())
+                .setEngineShards(engineShards)
+                .build());
+
+        shardedExecutor.getScriptRegistry().publish("greeting", "(function() { return 'Hello'; })").block();
+
+        // executions with a shard key can be routed to any shard, each one has the script cached
+        for (EngineShard shard : engineShards.getShards()) {
+            assertTrue(shard.getCachedSources() > 0, shard.toString());
+            assertEquals(0, shard.getOpenContexts());
+        }
+    }
+
+    @Test
+    void testWarmupGatesReadiness() {
+        AtomicInteger executions = new AtomicInteger();
+        WarmupSettings warmupSettings = new WarmupSettings()
+                .setAutoStart(false)
+                .setMinRounds(2)
+                .setMaxRounds(5)
+                .addScript("timeout", new InlineScriptHandler(
+                        ScriptTestUtils.sourceFromResource("scripts/test-script-timeout.js"))
+                        .bind("timeout", ScriptTimeout::new)
+                        .setOnTransform(response -> executions.incrementAndGet()))
+                .addScript("unknown", "unknown", new BaseScriptHandler());
+        AsyncScriptExecutor warmedExecutor = disposeAfterTest(new AsyncScriptExecutor.Builder()
+                .setScriptSchedulers(new ScriptSchedulers(2))
+                .setWarmupSettings(warmupSettings)
+                .build());
+
+        assertFalse(warmedExecutor.isReady());
+        WarmupReport report = warmedExecutor.getScriptWarmup().start().block();
+
+        assertTrue(warmedExecutor.isReady());
+        assertEquals(report, warmedExecutor.getScriptWarmup().getReport());
+        WarmupReport.ScriptResult timeout = report.getScripts().get(0);
+        assertTrue(timeout.getRounds() >= 2 && timeout.getRounds() <= 5, timeout.toString());
+        // each round executes the script 4 times on both schedulers
+        assertEquals(timeout.getRounds() * 8, executions.get());
+        assertNull(timeout.getError());
+        assertEquals(IllegalArgumentException.class, report.getScripts().get(1).getError().getClass());
+    }
+
+    @Test
+    void testResultCacheCoalescesAndEvicts() throws InterruptedException {
+        AsyncScriptExecutor cachingExecutor = disposeAfterTest(new AsyncScriptExecutor.Builder()
+                .setScriptSchedulers(executor.getScriptSchedulers())
+                .setResultCacheSettings(new ResultCacheSettings().setMaxEntries(1).setTimeToLive(Duration.ofMillis(300)))
+                .build());
+        AtomicInteger executions = new AtomicInteger();
+        Source script = ScriptTestUtils.sourceFromResource("scripts/test-script-timeout.js");
+        Function<Integer, ScriptHandler<String>> handler = input -> new InlineScriptHandler(script)
+                .bind("timeout", ScriptTimeout::new)
+                .setResultCacheKey(input)
+                .setTransform(response -> input + ":" + response)
+                .setOnTransform(response -> executions.incrementAndGet());
+        ScriptResultCache resultCache = cachingExecutor.getResultCache();
+
+        List<String> results = Flux.range(0, 5)
+                .flatMap(index -> cachingExecutor.executeScript(handler.apply(1)))
+                .collectList()
+                .block();
+        assertEquals(5, results.size());
+        // cached value is the transformed response of the handler
+        assertTrue(results.stream().allMatch(result -> result.startsWith("1:")), results.toString());
+        assertEquals(1, executions.get());
+        assertEquals(1, resultCache.getMisses());
+        assertEquals(4, resultCache.getCoalesced());
+
+        assertEquals(results.get(0), cachingExecutor.executeScript(handler.apply(1)).block());
+        assertEquals(1, resultCache.getHits());
+
+        // second input evicts the first one, cache holds one result
+        cachingExecutor.executeScript(handler.apply(2)).block();
+        cachingExecutor.executeScript(handler.apply(1)).block();
+        assertEquals(3, executions.get());
+        assertEquals(2, resultCache.getEvictions());
+
+        Thread.sleep(400);
+        cachingExecutor.executeScript(handler.apply(1)).block();
+        assertEquals(4, executions.get());
+    }
+
+    @Test
+    void testCoalescedOperationIsSharedAndRefCounted() throws Exception {
+        Sinks.One<String> response = Sinks.one();
+        AtomicInteger subscriptions = new AtomicInteger();
+        AtomicBoolean cancelled = new AtomicBoolean();
+        Mono<String> operation = response.asMono()
+                .doOnSubscribe(subscription -> subscriptions.incrementAndGet())
+                .doOnCancel(() -> cancelled.set(true));
+        ScriptHandler<String> scriptHandler = new InlineScriptHandler("(async function() { return await load(); })")
+                .bindFunction("load", (scriptContext, arguments) ->
+                        scriptContext.executeAsPromise(operation, "load", "load"));
+        OperationCoalescer coalescer = executor.getOperationCoalescer();
+
+        Disposable cancelledExecution = executor.executeScript(scriptHandler).subscribe();
+        CompletableFuture<List<String>> otherExecutions = Flux.range(0, 2)
+                .flatMap(index -> executor.executeScript(scriptHandler))
+                .collectList()
+                .toFuture();
+        for (int i = 0; i < 500 && coalescer.getCoalesced() < 2; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, coalescer.getCoalesced());
+        assertEquals(1, subscriptions.get());
+
+        // closing one context does not cancel the operation shared with the others
+        cancelledExecution.dispose();
+        assertFalse(cancelled.get());
+        response.tryEmitValue("shared");
+
+        assertEquals(List.of("shared", "shared"), otherExecutions.get(5, TimeUnit.SECONDS));
+        assertEquals(0, coalescer.getInFlight());
+    }
+
+    @Test
+    void testConcurrentHttpRequestsAreCoalesced() {
+        mockedHttpClient.addResponse("/company/info", new ScriptMockedHttpResponse(200, "json/company-info.json", 100));
+        mockedHttpClient.addResponse("/company/ceo", new ScriptMockedHttpResponse(200, "json/ceo-list.json", 100));
+        ScriptHandler<String> scriptHandler = new InlineScriptHandler(
+                ScriptTestUtils.sourceFromResource("scripts/test-http-get.js"))
+                .bind("client", scriptContext -> new ScriptSharedHttpClient(scriptContext, mockedHttpClient));
+        OperationCoalescer coalescer = executor.getOperationCoalescer();
+        long coalescedBefore = coalescer.getCoalesced();
+
+        List<String> results = Flux.range(0, 2)
+                .flatMap(index -> executor.executeScript(scriptHandler))
+                .collectList()
+                .block(Duration.ofSeconds(5));
+
+        results.forEach(verifyJsonMatchesResource("json/expected-response-client.json"));
+        // second execution joins both requests of the first one
+        assertEquals(2, coalescer.getCoalesced() - coalescedBefore);
+    }
+
+    @Test
+    void testBatchLoaderGroupsLoadsOfOneTick() {
+        List<List<Integer>> batchCalls = new CopyOnWriteArrayList<>();
+        ScriptHandler<String> scriptHandler = new InlineScriptHandler("(async function() { " +
+                "const users = await Promise.all([1, 1, 2, 3].map(id => loadUser(id))); " +
+                "const next = await loadUser(4); " +
+                "return users.concat([next]).join(','); })")
+                .bind("loadUser", scriptContext -> {
+                    ScriptBatchLoader<Integer, String> users = new ScriptBatchLoader<>(scriptContext, "users", ids -> {
+                        batchCalls.add(ids);
+                        return Flux.fromIterable(ids).collectMap(id -> id, id -> "user-" + id);
+                    }, new BatchLoaderSettings().setMaxBatchSize(2));
+                    return (ProxyExecutable) arguments -> users.load(arguments[0].asInt());
+                });
+
+        StepVerifier.create(executor.executeScript(scriptHandler))
+                .expectNext("user-1,user-1,user-2,user-3,user-4")
+                .verifyComplete();
+        // equal keys are loaded once, full batch is dispatched immediately, the rest at the end of the tick
+        assertEquals(List.of(List.of(1, 2), List.of(3), List.of(4)), batchCalls);
+    }
+
+    @Test
+    void testOperationLimitsQueueAndRejectOperations() {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        ScriptHandler<String> scriptHandler = new InlineScriptHandler("(async function() { " +
+                "const results = await Promise.all([1, 2, 3, 4].map(i => op(i))); " +
+                "results.push(await op(5)); " +
+                "try { await op(6); } catch (e) { return results.join(',') + ' rejected'; } " +
+                "return results.join(','); })")
+                .bindFunction("op", (scriptContext, arguments) -> {
+                    int index = arguments[0].asInt();
+                    Mono<Integer> operation = Mono.delay(Duration.ofMillis(20))
+                            .thenReturn(index)
+                            .doOnSubscribe(subscription -> maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max))
+                            .doFinally(signal -> inFlight.decrementAndGet());
+                    return scriptContext.executeAsPromise(operation, "op " + index);
+                })
+                .setOperationLimits(new OperationLimits().setMaxOperations(5).setMaxConcurrentOperations(2));
+
+        StepVerifier.create(executor.executeScript(scriptHandler))
+                .expectNext("1,2,3,4,5 rejected")
+                .verifyComplete();
+        // operations over the concurrency limit waited in the context
+        assertEquals(2, maxInFlight.get());
+    }
+
+    @Test
+    void testDeferredTeardownClosesReleasedContexts() throws InterruptedException {
+        AsyncScriptExecutor deferredExecutor = disposeAfterTest(new AsyncScriptExecutor.Builder()
+                .setScriptSchedulers(new ScriptSchedulers(1))
+                .setTeardownSettings(new TeardownSettings().setMaxClosesPerTask(1).setMaxPendingCloses(2))
+                .build());
+        Source script = ScriptUtils.parseScript("(async function() { return 'done'; })");
+
+        List<String> results = Flux.range(0, 6)
+                .flatMap(index -> deferredExecutor.executeScript(new BaseScriptHandler(script)))
+                .collectList()
+                .block();
+
+        assertEquals(6, results.size());
+        // closes run behind the executions, contexts over the pending limit are closed immediately
+        for (int i = 0; i < 500 && deferredExecutor.getOpenContextCount() > 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, deferredExecutor.getOpenContextCount());
+        assertEquals(0, deferredExecutor.getPendingCloseCount());
+    }
+
+    @Test
+    void testPriorityLanesAndFairTenantQueuing() throws Exception {
+        ScriptSchedulers scriptSchedulers = new ScriptSchedulers(1)
+                .setTenantWeights(tenant -> "heavy".equals(tenant) ? 2 : 1);
+        AsyncScriptExecutor laneExecutor = disposeAfterTest(new AsyncScriptExecutor.Builder()
+                .setScriptSchedulers(scriptSchedulers)
+                .build());
+        List<String> started = new CopyOnWriteArrayList<>();
+        CountDownLatch blocked = new CountDownLatch(1);
+        try {
+            // occupy the script thread, so all executions are queued before any starts
+            scriptSchedulers.getSchedulers().get(0).getScheduler().schedule(() -> {
+                try {
+                    blocked.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            List<CompletableFuture<String>> executions = new ArrayList<>();
+            executions.add(executeInLane(laneExecutor, started, ExecutionPriority.BATCH, "bulk"));
+            executions.add(executeInLane(laneExecutor, started, ExecutionPriority.BATCH, "bulk"));
+            executions.add(executeInLane(laneExecutor, started, ExecutionPriority.NORMAL, "heavy"));
+            executions.add(executeInLane(laneExecutor, started, ExecutionPriority.NORMAL, "heavy"));
+            executions.add(executeInLane(laneExecutor, started, ExecutionPriority.NORMAL, "heavy"));
+            executions.add(executeInLane(laneExecutor, started, ExecutionPriority.NORMAL, "light"));
+            executions.add(executeInLane(laneExecutor, started, ExecutionPriority.NORMAL, "light"));
+            executions.add(executeInLane(laneExecutor, started, ExecutionPriority.INTERACTIVE, "user"));
+            blocked.countDown();
+            for (CompletableFuture<String> execution : executions) {
+                execution.get(10, TimeUnit.SECONDS);
+            }
+
+            // strict priority between lanes, tenants of a lane take turns of their weight
+            assertEquals(List.of("user", "heavy", "heavy", "light", "heavy", "light", "bulk", "bulk"), started);
+        } finally {
+            blocked.countDown();
+        }
+    }
+
+    private static CompletableFuture<String> executeInLane(AsyncScriptExecutor laneExecutor, List<String> started,
+                                                           ExecutionPriority priority, String tenant) {
+        ScriptHandler<String> scriptHandler = new InlineScriptHandler("(async function() { return 'done'; })")
+                .setPriority(priority)
+                .setTenantKey(tenant)
+                .setOnInitiate(scriptContext -> started.add(tenant));
+        return laneExecutor.executeScript(scriptHandler).toFuture();
+    }
+
+    @Test
+    void testElasticSchedulersScaleUpAndRetireDrainedThread() throws Exception {
+        ElasticSettings settings = new ElasticSettings()
+                .setMinSchedulers(1)
+                .setInitialSchedulers(1)
+                .setMaxSchedulers(2)
+                .setStableEvaluations(1)
+                .setScaleUpQueueWait(Duration.ofMillis(1))
+                .setEvaluationInterval(Duration.ofHours(1));
+        ScriptSchedulers scriptSchedulers = ScriptSchedulers.elastic(settings);
+        AsyncScriptExecutor elasticExecutor = disposeAfterTest(new AsyncScriptExecutor.Builder()
+                .setScriptSchedulers(scriptSchedulers)
+                .setContextPoolSettings(new ContextPoolSettings())
+                .build());
+        ScriptHandler<String> scriptHandler = new InlineScriptHandler("(async function() { return 'done'; })")
+                .setContextReuseKey("elastic");
+        ScriptScheduler first = scriptSchedulers.getSchedulers().get(0);
+        // thread blocked in a host call, executions wait in its queue
+        first.getScheduler().schedule(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        Flux.range(0, 3).flatMap(index -> elasticExecutor.executeScript(scriptHandler)).blockLast();
+
+        new SchedulerAutoscaler(scriptSchedulers, settings).evaluate();
+        assertEquals(2, scriptSchedulers.getSchedulers().size());
+        assertTrue(elasticExecutor.getOpenContextCount() > 0);
+
+        // pooled contexts are closed on the retired thread before it stops
+        assertTrue(scriptSchedulers.retireScheduler(first));
+        for (int i = 0; i < 500 && elasticExecutor.getOpenContextCount() > 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, elasticExecutor.getOpenContextCount());
+        assertEquals(List.of("Script-1"), scriptSchedulers.getSchedulers().stream()
+                .map(ScriptScheduler::getName)
+                .collect(Collectors.toList()));
+        assertFalse(scriptSchedulers.retireScheduler(scriptSchedulers.getSchedulers().get(0)));
+        StepVerifier.create(elasticExecutor.executeScript(scriptHandler))
+                .expectNext("done")
+                .verifyComplete();
+    }
+
+    @Test
+    void testPhaseMetrics() throws InterruptedException {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        AsyncScriptExecutor meteredExecutor = disposeAfterTest(new AsyncScriptExecutor.Builder()
+                .setScriptSchedulers(executor.getScriptSchedulers())
+                .setScriptMetrics(new MicrometerScriptMetrics(registry))
+                .build());
+
+        meteredExecutor.executeScript(new TestScriptHandler("scripts/test-script-timeout.js", null)).block();
+        StepVerifier.create(meteredExecutor.executeScript(new TestScriptHandler("scripts/test-script-error-eval.js", null)))
+                .expectError(ScriptExecutionException.class)
+                .verify();
+
+        for (String phase : List.of("context_build", "initiation", "evaluation")) {
+            assertEquals(2, registry.get("script.phase").tags("phase", phase, "outcome", "success").timer().count(), phase);
+        }
+        for (String phase : List.of("promise_resolution", "transformation")) {
+            assertEquals(1, registry.get("script.phase").tags("phase", phase, "outcome", "success").timer().count(), phase);
+        }
+        // error is thrown from the async function, the returned promise is rejected
+        assertEquals(1, registry.get("script.phase").tags("phase", "promise_resolution", "outcome", "error").timer().count());
+        assertEquals(2, registry.get("script.contexts.acquired").tag("pooled", "false").counter().count());
+
+        // contexts are released by a deferred task
+        for (int i = 0; i < 50 && meteredExecutor.getOpenContextCount() > 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, registry.get("script.contexts.open").gauge().value());
+        assertEquals(0, registry.get("script.operations.inflight").gauge().value());
+    }
+
+    private Consumer<Throwable> verifyTimeoutException(ExecutionPhase phase, String reason) {
+        return exception -> {
+            if (!(exception instanceof ScriptTimeoutException)) {
+                throw new AssertionError("ScriptTimeoutException expected", exception);
+            }
+            ScriptTimeoutException timeoutException = (ScriptTimeoutException) exception;
+            assertEquals(phase, timeoutException.getPhase());
+            if (!timeoutException.getMessage().startsWith(reason)) {
+                throw new AssertionError("Unexpected message " + timeoutException.getMessage());
+            }
+        };
+    }
+
     private Consumer<String> verifyJsonMatchesResource(String resourceName) {
         return json -> {
             log.debug("Received next: {}", json);
@@ -0,0 +1,86 @@
+package net.voldrich.graal.async.script;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EngineShardsTest {
+
+    private final EngineShards engineShards = new EngineShards(3);
+
+    @Test
+    void testKeysAreSpreadAndRoutedStably() {
+        Map<String, EngineShard> routes = route(300);
+
+        assertEquals(3, routes.values().stream().distinct().count());
+        routes.forEach((key, shard) -> assertSame(shard, engineShards.route(key)));
+        assertSame(engineShards.getDefaultShard(), engineShards.route(null));
+    }
+
+    @Test
+    void testAddedShardTakesKeysOnlyFromOtherShards() {
+        Map<String, EngineShard> before = route(300);
+        EngineShard added = engineShards.addShard();
+        Map<String, EngineShard> after = route(300);
+
+        // a key either stays on its shard or moves to the new one
+        before.forEach((key, shard) -> assertTrue(after.get(key) == shard || after.get(key) == added, key));
+        assertTrue(after.containsValue(added));
+        assertThrows(IllegalArgumentException.class, () -> engineShards.addShard(added.getName(), added.getEngine()));
+    }
+
+    @Test
+    void testRetiredShardMovesOnlyItsKeys() {
+        Map<String, EngineShard> before = route(300);
+        EngineShard retired = engineShards.getShards().get(1);
+
+        assertTrue(engineShards.retireShard(retired.getName()));
+        Map<String, EngineShard> after = route(300);
+
+        before.forEach((key, shard) -> {
+            if (shard != retired) {
+                assertSame(shard, after.get(key), key);
+            }
+        });
+        assertFalse(after.containsValue(retired));
+        assertTrue(retired.isRetired());
+        // engine without contexts is closed right away
+        assertFalse(retired.tryOpenContext());
+        assertFalse(engineShards.retireShard(retired.getName()));
+    }
+
+    @Test
+    void testRetiredShardClosesEngineWithLastContext() {
+        EngineShard shard = engineShards.getShards().get(1);
+        assertTrue(shard.tryOpenContext());
+
+        engineShards.retireShard(shard.getName());
+        assertEquals(1, shard.getOpenContexts());
+
+        shard.contextClosed();
+        assertFalse(shard.tryOpenContext());
+    }
+
+    @Test
+    void testLastShardCanNotBeRetired() {
+        engineShards.retireShard("engine-0");
+        engineShards.retireShard("engine-1");
+
+        assertThrows(IllegalStateException.class, () -> engineShards.retireShard("engine-2"));
+    }
+
+    private Map<String, EngineShard> route(int keys) {
+        return IntStream.range(0, keys)
+                .mapToObj(index -> "tenant-" + index)
+                .collect(Collectors.toMap(key -> key, engineShards::route, (a, b) -> a, HashMap::new));
+    }
+}
@@ -0,0 +1,74 @@
+package net.voldrich.graal.async.script;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ExecutionAdmissionTest {
+
+    private final ScriptSchedulers scriptSchedulers = new ScriptSchedulers(1);
+
+    private final ExecutionAdmission admission = new ExecutionAdmission(new AdmissionSettings()
+            .setMaxActiveExecutions(1)
+            .setMaxWaitingExecutions(2)
+            .setWaitTimeout(Duration.ofSeconds(5)), scriptSchedulers);
+
+    @AfterEach
+    void tearDown() {
+        scriptSchedulers.dispose();
+    }
+
+    @Test
+    void testWaiterIsAdmittedWhenSlotIsReleased() {
+        ScriptScheduler running = admission.admit(ExecutionPriority.NORMAL).block();
+        Mono<ScriptScheduler> waiting = admission.admit(ExecutionPriority.NORMAL);
+
+        StepVerifier.create(waiting)
+                .then(() -> assertEquals(1, admission.getWaitingExecutions()))
+                .then(() -> admission.release(running))
+                .expectNext(running)
+                .verifyComplete();
+        assertEquals(1, admission.getActiveExecutions());
+        assertEquals(0, admission.getWaitingExecutions());
+    }
+
+    @Test
+    void testSlotAdmittedToCancelledWaiterIsReleased() {
+        ScriptScheduler running = admission.admit(ExecutionPriority.NORMAL).block();
+
+        // waiter without demand is admitted, but the scheduler is never delivered
+        StepVerifier.create(admission.admit(ExecutionPriority.NORMAL), 0)
+                .then(() -> admission.release(running))
+                .then(() -> assertEquals(1, admission.getActiveExecutions()))
+                .thenCancel()
+                .verify();
+
+        assertEquals(0, admission.getActiveExecutions());
+        assertEquals(0, admission.getWaitingExecutions());
+        assertEquals(0, running.getActiveExecutions());
+    }
+
+    @Test
+    void testWaitersAreAdmittedByPriority() {
+        ScriptScheduler running = admission.admit(ExecutionPriority.NORMAL).block();
+        List<ExecutionPriority> admitted = new CopyOnWriteArrayList<>();
+        admission.admit(ExecutionPriority.BATCH).subscribe(scheduler -> admitted.add(ExecutionPriority.BATCH));
+        admission.admit(ExecutionPriority.INTERACTIVE).subscribe(scheduler -> admitted.add(ExecutionPriority.INTERACTIVE));
+        assertEquals(2, admission.getWaitingExecutions());
+
+        // interactive waiter arrived later, but is admitted first
+        admission.release(running);
+        assertEquals(List.of(ExecutionPriority.INTERACTIVE), admitted);
+
+        admission.release(running);
+        assertEquals(List.of(ExecutionPriority.INTERACTIVE, ExecutionPriority.BATCH), admitted);
+        assertEquals(0, admission.getWaitingExecutions());
+    }
+}
@@ -0,0 +1,19 @@
+package net.voldrich.graal.async.script;
+
+import org.graalvm.polyglot.Value;
+
+/**
+ * Batch variant of {@link InlineScriptHandler}, the inline script evaluates to the entry function executed
+ * for each input, see {@link BaseBatchScriptHandler}.
+ **/
+public class InlineBatchScriptHandler<I> extends InlineScriptHandler implements BatchScriptHandler<I, String> {
+
+    public InlineBatchScriptHandler(String script) {
+        super(script);
+    }
+
+    @Override
+    public Value evaluateScript(ScriptContext scriptContext) {
+        return evaluateSource(scriptContext);
+    }
+}
@@ -0,0 +1,88 @@
+package net.voldrich.graal.async.script;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+import org.graalvm.polyglot.Source;
+import org.graalvm.polyglot.Value;
+import org.graalvm.polyglot.proxy.ProxyExecutable;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * Test handler of an inline script, bindings and handler settings are configured by chained setters
+ * instead of an anonymous handler subclass in each test.
+ **/
+@Getter
+@Setter
+@Accessors(chain = true)
+public class InlineScriptHandler extends BaseScriptHandler {
+
+    /** Members put into the bindings of each initiated context, created by the context. */
+    @Getter(AccessLevel.NONE)
+    private final Map<String, Function<ScriptContext, Object>> bindings = new LinkedHashMap<>();
+
+    private ExecutionPriority priority = ExecutionPriority.NORMAL;
+
+    private Object tenantKey;
+
+    private Object shardKey;
+
+    private Object resultCacheKey;
+
+    private Object contextReuseKey;
+
+    private OperationLimits operationLimits;
+
+    /** Called once the bindings of a new context are initiated. */
+    private Consumer<ScriptContext> onInitiate = scriptContext -> { };
+
+    /** Applied to each response serialized by the base handler. */
+    private UnaryOperator<String> transform = UnaryOperator.identity();
+
+    /** Called with each transformed response, also with each item of a streamed execution. */
+    private Consumer<String> onTransform = response -> { };
+
+    public InlineScriptHandler(String script) {
+        this(ScriptUtils.parseScript(script));
+    }
+
+    public InlineScriptHandler(Source source) {
+        super(source);
+    }
+
+    /**
+     * Binds a member created for each context, e.g. a host object using the context.
+     **/
+    public InlineScriptHandler bind(String name, Function<ScriptContext, Object> binding) {
+        bindings.put(name, binding);
+        return this;
+    }
+
+    /**
+     * Binds a function called by the script with its context and arguments.
+     **/
+    public InlineScriptHandler bindFunction(String name, BiFunction<ScriptContext, Value[], Object> function) {
+        return bind(name, scriptContext -> (ProxyExecutable) arguments -> function.apply(scriptContext, arguments));
+    }
+
+    @Override
+    public void initiateContext(ScriptContext scriptContext) {
+        Value contextBindings = scriptContext.getIntrinsics().getBindings();
+        bindings.forEach((name, binding) -> contextBindings.putMember(name, binding.apply(scriptContext)));
+        onInitiate.accept(scriptContext);
+    }
+
+    @Override
+    public String transformScriptResponse(ScriptContext context, Object value) {
+        String response = transform.apply(super.transformScriptResponse(context, value));
+        onTransform.accept(response);
+        return response;
+    }
+}
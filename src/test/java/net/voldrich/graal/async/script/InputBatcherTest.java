@@ -0,0 +1,54 @@
+package net.voldrich.graal.async.script;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+
+class InputBatcherTest {
+
+    private final BatchSettings batchSettings = new BatchSettings()
+            .setMaxBatchSize(2)
+            .setMaxBatchWindow(Duration.ofMillis(20));
+
+    @Test
+    void testBatchesAreFormedOnDemand() {
+        StepVerifier.create(InputBatcher.batch(Flux.range(1, 5), batchSettings), 0)
+                .expectSubscription()
+                .expectNoEvent(Duration.ofMillis(50))
+                .thenRequest(1)
+                .expectNext(List.of(1, 2))
+                .thenRequest(2)
+                .expectNext(List.of(3, 4), List.of(5))
+                .verifyComplete();
+    }
+
+    @Test
+    void testElapsedWindowWaitsForDemandAndKeepsFilling() {
+        Sinks.Many<Integer> inputs = Sinks.many().unicast().onBackpressureBuffer();
+
+        StepVerifier.create(InputBatcher.batch(inputs.asFlux(), batchSettings), 1)
+                .then(() -> inputs.tryEmitNext(1))
+                .expectNext(List.of(1))
+                .then(() -> inputs.tryEmitNext(2))
+                .expectNoEvent(Duration.ofMillis(50))
+                .then(() -> inputs.tryEmitNext(3))
+                .then(() -> inputs.tryEmitNext(4))
+                .thenRequest(1)
+                .expectNext(List.of(2, 3))
+                .then(inputs::tryEmitComplete)
+                .thenRequest(1)
+                .expectNext(List.of(4))
+                .verifyComplete();
+    }
+
+    @Test
+    void testErrorDropsOpenBatch() {
+        StepVerifier.create(InputBatcher.batch(Flux.just(1).concatWith(Flux.error(new IllegalStateException())),
+                batchSettings))
+                .verifyError(IllegalStateException.class);
+    }
+}
@@ -0,0 +1,120 @@
+package net.voldrich.graal.async.script;
+
+import org.graalvm.polyglot.Context;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+import reactor.test.publisher.PublisherProbe;
+
+import static net.voldrich.graal.async.script.AsyncScriptExecutor.JS_LANGUAGE_TYPE;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OperationQuotaTest {
+
+    // created on the test thread, which is then the script thread of the context
+    private final ScriptContextImpl scriptContext = new ScriptContextImpl(Context.create(JS_LANGUAGE_TYPE),
+            Schedulers.immediate(), new BoundedOutputCapture(1024).open());
+
+    private final OperationQuota quota = new OperationQuota(scriptContext);
+
+    @AfterEach
+    void tearDown() {
+        scriptContext.close();
+    }
+
+    @Test
+    void testUnlimitedOperationIsNotWrapped() {
+        Mono<String> operation = Mono.just("done");
+        quota.reset(new OperationLimits());
+
+        assertSame(operation, quota.limit(operation, "op"));
+    }
+
+    @Test
+    void testOperationsOverTotalLimitAreRejected() {
+        quota.reset(new OperationLimits().setMaxOperations(2));
+
+        StepVerifier.create(limit(Mono.just(1), "op 1")).expectNext(1).verifyComplete();
+        StepVerifier.create(limit(Mono.just(2), "op 2")).expectNext(2).verifyComplete();
+        StepVerifier.create(limit(Mono.just(3), "op 3"))
+                .expectError(OperationLimitExceededException.class)
+                .verify();
+
+        // next execution starts with new counters
+        quota.reset(new OperationLimits().setMaxOperations(2));
+        StepVerifier.create(limit(Mono.just(4), "op 4")).expectNext(4).verifyComplete();
+    }
+
+    @Test
+    void testOperationWaitsForConcurrencySlot() {
+        quota.reset(new OperationLimits().setMaxConcurrentOperations(1));
+        Sinks.One<String> first = Sinks.one();
+        PublisherProbe<String> second = PublisherProbe.of(Mono.just("second"));
+
+        limit(first.asMono(), "first").subscribe();
+        StepVerifier.create(limit(second.mono(), "second"))
+                .then(() -> assertFalse(second.wasSubscribed()))
+                .then(() -> first.tryEmitValue("first"))
+                .expectNext("second")
+                .verifyComplete();
+    }
+
+    @Test
+    void testFailFastRejectsInsteadOfWaiting() {
+        quota.reset(new OperationLimits().setMaxConcurrentOperations(1).setFailFast(true));
+        Sinks.One<String> first = Sinks.one();
+        limit(first.asMono(), "first").subscribe();
+
+        StepVerifier.create(limit(Mono.just("second"), "second"))
+                .expectError(OperationLimitExceededException.class)
+                .verify();
+
+        first.tryEmitValue("first");
+        StepVerifier.create(limit(Mono.just("third"), "third")).expectNext("third").verifyComplete();
+    }
+
+    @Test
+    void testDescriptionLimitAppliesOnlyToMatchingOperations() {
+        quota.reset(new OperationLimits()
+                .setMaxConcurrentOperations(10)
+                .limitDescription("get ", new OperationLimits().setMaxConcurrentOperations(1)));
+        Sinks.One<String> get = Sinks.one();
+        limit(get.asMono(), "get a").subscribe();
+
+        StepVerifier.create(limit(Mono.just("post"), "post a")).expectNext("post").verifyComplete();
+        PublisherProbe<String> waiting = PublisherProbe.of(Mono.just("get b"));
+        limit(waiting.mono(), "get b").subscribe();
+        assertFalse(waiting.wasSubscribed());
+
+        get.tryEmitValue("get a");
+        assertTrue(waiting.wasSubscribed());
+    }
+
+    @Test
+    void testCancelledWaitingOperationIsSkipped() {
+        quota.reset(new OperationLimits().setMaxConcurrentOperations(1));
+        Sinks.One<String> first = Sinks.one();
+        PublisherProbe<String> cancelled = PublisherProbe.of(Mono.just("cancelled"));
+        PublisherProbe<String> next = PublisherProbe.of(Mono.just("next"));
+
+        limit(first.asMono(), "first").subscribe();
+        Disposable cancelledSubscription = limit(cancelled.mono(), "cancelled").subscribe();
+        limit(next.mono(), "next").subscribe();
+        cancelledSubscription.dispose();
+        first.tryEmitValue("first");
+
+        assertFalse(cancelled.wasSubscribed());
+        assertTrue(next.wasSubscribed());
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> Mono<T> limit(Mono<T> operation, String description) {
+        return (Mono<T>) quota.limit(operation, description);
+    }
+}
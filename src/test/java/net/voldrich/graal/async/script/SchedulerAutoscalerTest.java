@@ -0,0 +1,91 @@
+package net.voldrich.graal.async.script;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SchedulerAutoscalerTest {
+
+    // periodic evaluation of the schedulers is left out, tests evaluate their own autoscaler
+    private final ElasticSettings settings = new ElasticSettings()
+            .setMinSchedulers(1)
+            .setMaxSchedulers(2)
+            .setScaleUpQueueWait(Duration.ofMillis(1))
+            .setEvaluationInterval(Duration.ofHours(1));
+
+    private ScriptSchedulers scriptSchedulers;
+
+    @AfterEach
+    void tearDown() {
+        scriptSchedulers.dispose();
+    }
+
+    @Test
+    void testIdleSchedulersAreRetiredDownToMinimum() {
+        SchedulerAutoscaler autoscaler = start(settings.setInitialSchedulers(2).setStableEvaluations(2));
+
+        autoscaler.evaluate();
+        assertEquals(2, scriptSchedulers.getSchedulers().size());
+        autoscaler.evaluate();
+        assertEquals(1, scriptSchedulers.getSchedulers().size());
+
+        autoscaler.evaluate();
+        autoscaler.evaluate();
+        assertEquals(1, scriptSchedulers.getSchedulers().size());
+    }
+
+    @Test
+    void testWaitingExecutionsAddSchedulerUpToMaximum() throws InterruptedException {
+        SchedulerAutoscaler autoscaler = start(settings.setInitialSchedulers(1).setStableEvaluations(1));
+
+        queueBehindBlockedThread(scriptSchedulers.getSchedulers().get(0));
+        autoscaler.evaluate();
+        assertEquals(2, scriptSchedulers.getSchedulers().size());
+
+        queueBehindBlockedThread(scriptSchedulers.getSchedulers().get(0));
+        autoscaler.evaluate();
+        assertEquals(2, scriptSchedulers.getSchedulers().size());
+    }
+
+    @Test
+    void testChangingDecisionResetsVotes() throws InterruptedException {
+        SchedulerAutoscaler autoscaler = start(settings.setInitialSchedulers(2).setStableEvaluations(2));
+
+        autoscaler.evaluate();
+        queueBehindBlockedThread(scriptSchedulers.getSchedulers().get(0));
+        autoscaler.evaluate();
+        autoscaler.evaluate();
+
+        // idle evaluations were interrupted by a waiting one, so none of the decisions held twice in a row
+        assertEquals(2, scriptSchedulers.getSchedulers().size());
+        autoscaler.evaluate();
+        assertEquals(1, scriptSchedulers.getSchedulers().size());
+    }
+
+    private SchedulerAutoscaler start(ElasticSettings settings) {
+        scriptSchedulers = ScriptSchedulers.elastic(settings);
+        return new SchedulerAutoscaler(scriptSchedulers, settings);
+    }
+
+    /**
+     * Blocks the thread in a host call, so an execution started meanwhile waits in its queue.
+     **/
+    private static void queueBehindBlockedThread(ScriptScheduler scriptScheduler) throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        scriptScheduler.getScheduler().schedule(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        scriptScheduler.startInLane(ExecutionPriority.NORMAL, null, ScriptMetrics.NOOP).subscribe(null, null, started::countDown);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,92 @@
+package net.voldrich.graal.async.script;
+
+import org.graalvm.polyglot.proxy.ProxyExecutable;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ScriptBatchLoaderTest {
+
+    private final AsyncScriptExecutor executor = new AsyncScriptExecutor.Builder()
+            .setScriptSchedulers(new ScriptSchedulers(1))
+            .build();
+
+    private final List<List<Integer>> batchCalls = new CopyOnWriteArrayList<>();
+
+    private final AtomicReference<ScriptBatchLoader<Integer, String>> loader = new AtomicReference<>();
+
+    @AfterEach
+    void tearDown() {
+        executor.dispose();
+        executor.getScriptSchedulers().dispose();
+    }
+
+    @Test
+    void testEqualKeysAreLoadedOnceAndMissingKeysResolveUndefined() {
+        ScriptHandler<String> scriptHandler = handler(
+                "(async function() { const [a, b, c] = await Promise.all([load(1), load(1), load(2)]);"
+                        + " return [a, b, c === undefined]; })",
+                ids -> Mono.just(Map.of(1, "one")), new BatchLoaderSettings());
+
+        StepVerifier.create(executor.executeScript(scriptHandler))
+                .expectNext("[\"one\",\"one\",true]")
+                .verifyComplete();
+        assertEquals(List.of(List.of(1, 2)), batchCalls);
+        assertEquals(1, loader.get().getDispatchedBatches());
+        assertEquals(2, loader.get().getDispatchedKeys());
+    }
+
+    @Test
+    void testFailedBatchRejectsAllItsLoads() {
+        ScriptHandler<String> scriptHandler = handler(
+                "(async function() { const results = await Promise.allSettled([load(1), load(2)]);"
+                        + " return results.map(result => result.status); })",
+                ids -> Mono.error(new IllegalStateException("batch failed")), new BatchLoaderSettings());
+
+        StepVerifier.create(executor.executeScript(scriptHandler))
+                .expectNext("[\"rejected\",\"rejected\"]")
+                .verifyComplete();
+    }
+
+    @Test
+    void testBatchWindowGroupsLoadsOfSeveralTicks() {
+        ScriptHandler<String> scriptHandler = handler(
+                "(async function() { const first = load(1); await later();"
+                        + " return (await Promise.all([first, load(2)])).join(','); })",
+                ids -> Mono.just(Map.of(1, "one", 2, "two")),
+                new BatchLoaderSettings().setBatchWindow(Duration.ofMillis(200)));
+
+        StepVerifier.create(executor.executeScript(scriptHandler))
+                .expectNext("one,two")
+                .verifyComplete();
+        assertEquals(List.of(List.of(1, 2)), batchCalls);
+    }
+
+    private ScriptHandler<String> handler(String script,
+                                          Function<List<Integer>, Mono<Map<Integer, String>>> batchFunction,
+                                          BatchLoaderSettings settings) {
+        Function<List<Integer>, Mono<Map<Integer, String>>> recordedBatchFunction = ids -> {
+            batchCalls.add(ids);
+            return batchFunction.apply(ids);
+        };
+        return new InlineScriptHandler(script)
+                .bind("load", scriptContext -> {
+                    ScriptBatchLoader<Integer, String> batchLoader =
+                            new ScriptBatchLoader<>(scriptContext, "load", recordedBatchFunction, settings);
+                    loader.set(batchLoader);
+                    return (ProxyExecutable) arguments -> batchLoader.load(arguments[0].asInt());
+                })
+                .bindFunction("later", (scriptContext, arguments) ->
+                        scriptContext.executeAsPromise(Mono.delay(Duration.ofMillis(10)), "later"));
+    }
+}
@@ -0,0 +1,48 @@
+package net.voldrich.graal.async.script;
+
+import org.graalvm.polyglot.Context;
+import org.junit.jupiter.api.Test;
+import reactor.core.scheduler.Schedulers;
+
+import java.nio.charset.StandardCharsets;
+import java.util.function.Supplier;
+
+import static net.voldrich.graal.async.script.AsyncScriptExecutor.JS_LANGUAGE_TYPE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ScriptContextImplTest {
+
+    private final BoundedOutputCapture outputCapture = new BoundedOutputCapture(1024);
+
+    @Test
+    void testScriptOutputOfClosedContextIsFrozen() throws Exception {
+        ScriptContextImpl scriptContext = openContext("first");
+        Supplier<String> lazyOutput = scriptContext.getLazyScriptOutput();
+        scriptContext.close();
+
+        // recycled buffer is reused by the next context
+        ScriptOutputBuffer recycled = outputCapture.open();
+        recycled.write("second".getBytes(StandardCharsets.UTF_8));
+
+        assertEquals("first", scriptContext.getScriptOutput());
+        assertEquals("first", lazyOutput.get());
+    }
+
+    @Test
+    void testScriptOutputOfClosedContextWithoutLazyOutputIsEmpty() throws Exception {
+        ScriptContextImpl scriptContext = openContext("first");
+        assertEquals("first", scriptContext.getScriptOutput());
+        scriptContext.close();
+
+        outputCapture.open().write("second".getBytes(StandardCharsets.UTF_8));
+
+        assertEquals("", scriptContext.getScriptOutput());
+    }
+
+    private ScriptContextImpl openContext(String output) throws Exception {
+        ScriptOutputBuffer buffer = outputCapture.open();
+        buffer.write(output.getBytes(StandardCharsets.UTF_8));
+        Context context = Context.newBuilder(JS_LANGUAGE_TYPE).out(buffer).err(buffer).build();
+        return new ScriptContextImpl(context, Schedulers.immediate(), buffer);
+    }
+}
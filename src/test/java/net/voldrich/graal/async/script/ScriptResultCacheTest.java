@@ -0,0 +1,107 @@
+package net.voldrich.graal.async.script;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ScriptResultCacheTest {
+
+    private ScriptResultCache resultCache = new ScriptResultCache(new ResultCacheSettings());
+
+    @Test
+    void testHandlerSourcesDoNotShareResults() {
+        assertEquals("one", get(handler("one", "input"), "one"));
+        assertEquals("two", get(handler("two", "input"), "two"));
+        // equal source content of another handler instance is the same script
+        assertEquals("one", get(handler("one", "input"), "executed"));
+
+        assertEquals(2, resultCache.getMisses());
+        assertEquals(1, resultCache.getHits());
+    }
+
+    @Test
+    void testLeastRecentlyUsedResultIsEvicted() {
+        resultCache = new ScriptResultCache(new ResultCacheSettings().setMaxEntries(2));
+        get(handler("script", 1), "first");
+        get(handler("script", 2), "second");
+        // access moves the first result to the tail
+        assertEquals("first", get(handler("script", 1), "executed"));
+
+        get(handler("script", 3), "third");
+
+        assertEquals(2, resultCache.size());
+        assertEquals(1, resultCache.getEvictions());
+        assertEquals("first", get(handler("script", 1), "executed"));
+        assertEquals("executed", get(handler("script", 2), "executed"));
+    }
+
+    @Test
+    void testResultsAreEvictedByWeight() {
+        resultCache = new ScriptResultCache(new ResultCacheSettings()
+                .setMaxWeight(100)
+                .setWeigher(value -> ((String) value).length() * 10L));
+        get(handler("script", 1), "abcd");
+        get(handler("script", 2), "abcde");
+        assertEquals(90, resultCache.getWeight());
+
+        // result over the limit is returned, but not cached
+        assertEquals("abcdefghijk", get(handler("script", 3), "abcdefghijk"));
+        assertEquals(2, resultCache.size());
+
+        get(handler("script", 4), "ab");
+        assertEquals(70, resultCache.getWeight());
+        assertEquals(1, resultCache.getEvictions());
+    }
+
+    @Test
+    void testExpiredResultIsExecutedAgain() throws InterruptedException {
+        resultCache = new ScriptResultCache(new ResultCacheSettings().setTimeToLive(Duration.ofMillis(50)));
+        get(handler("script", 1), "first");
+        assertEquals("first", get(handler("script", 1), "executed"));
+
+        Thread.sleep(100);
+
+        assertEquals("second", get(handler("script", 1), "second"));
+        assertEquals(1, resultCache.getEvictions());
+        assertEquals(2, resultCache.getMisses());
+    }
+
+    @Test
+    void testConcurrentRequestsShareExecution() {
+        Sinks.One<Object> execution = Sinks.one();
+        Mono<String> first = resultCache.get(null, handler("script", 1), () -> execution.asMono().cast(String.class));
+        Mono<String> second = resultCache.get(null, handler("script", 1), () -> Mono.just("executed"));
+
+        StepVerifier.create(Mono.zip(first, second))
+                .then(() -> execution.tryEmitValue("shared"))
+                .assertNext(results -> assertEquals("shared", results.getT2()))
+                .verifyComplete();
+        assertEquals(1, resultCache.getMisses());
+        assertEquals(1, resultCache.getCoalesced());
+    }
+
+    @Test
+    void testFailedAndEmptyExecutionsAreNotCached() {
+        StepVerifier.create(resultCache.get(null, handler("script", 1), () -> Mono.error(new IllegalStateException())))
+                .expectError(IllegalStateException.class)
+                .verify();
+        StepVerifier.create(resultCache.get(null, handler("script", 1), Mono::empty))
+                .verifyComplete();
+
+        assertEquals("executed", get(handler("script", 1), "executed"));
+        assertEquals(3, resultCache.getMisses());
+    }
+
+    private String get(ScriptHandler<String> scriptHandler, String result) {
+        return resultCache.get(null, scriptHandler, () -> Mono.just(result)).block();
+    }
+
+    private static ScriptHandler<String> handler(String returned, Object resultCacheKey) {
+        return new InlineScriptHandler("(function() { return '" + returned + "'; })").setResultCacheKey(resultCacheKey);
+    }
+}
@@ -0,0 +1,137 @@
+package net.voldrich.graal.async.script;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ScriptTaskQueueTest {
+
+    private final ScriptTaskQueue taskQueue = new ScriptTaskQueue();
+
+    @Test
+    void testInternalTasksFirstThenLanesByPriority() {
+        Runnable batch = laneTask(ExecutionPriority.BATCH, null);
+        Runnable normal = laneTask(ExecutionPriority.NORMAL, null);
+        Runnable interactive = laneTask(ExecutionPriority.INTERACTIVE, null);
+        Runnable internal = () -> { };
+        taskQueue.offer(batch);
+        taskQueue.offer(normal);
+        taskQueue.offer(interactive);
+        taskQueue.offer(internal);
+
+        assertSame(internal, taskQueue.peek());
+        assertEquals(List.of(internal, interactive, normal, batch), pollAll());
+    }
+
+    @Test
+    void testTenantsOfLaneTakeWeightedTurns() {
+        taskQueue.setTenantWeights(tenant -> "premium".equals(tenant) ? 2 : 1);
+        List<Runnable> premium = new ArrayList<>();
+        List<Runnable> basic = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            premium.add(laneTask(ExecutionPriority.NORMAL, "premium"));
+        }
+        for (int i = 0; i < 3; i++) {
+            basic.add(laneTask(ExecutionPriority.NORMAL, "basic"));
+        }
+        premium.forEach(taskQueue::offer);
+        basic.forEach(taskQueue::offer);
+
+        assertEquals(List.of(premium.get(0), premium.get(1), basic.get(0), premium.get(2), basic.get(1), basic.get(2)),
+                pollAll());
+    }
+
+    @Test
+    void testRemoveQueuedTask() {
+        Runnable first = laneTask(ExecutionPriority.NORMAL, "a");
+        Runnable second = laneTask(ExecutionPriority.NORMAL, "a");
+        Runnable other = laneTask(ExecutionPriority.NORMAL, "b");
+        Runnable internal = () -> { };
+        List.of(first, second, other, internal).forEach(taskQueue::offer);
+
+        assertTrue(taskQueue.remove(first));
+        assertTrue(taskQueue.remove(internal));
+        assertFalse(taskQueue.remove(first));
+        assertEquals(2, taskQueue.size());
+
+        Iterator<Runnable> iterator = taskQueue.iterator();
+        assertSame(second, iterator.next());
+        iterator.remove();
+        assertEquals(List.of(other), pollAll());
+        assertNull(taskQueue.poll());
+    }
+
+    @Test
+    void testExecutorRemovesAndPurgesTasks() throws InterruptedException {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, taskQueue);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            // keeps the thread busy, so the following tasks stay queued
+            FutureTask<Boolean> blocker = new FutureTask<>(() -> release.await(5, TimeUnit.SECONDS));
+            FutureTask<Void> cancelled = new FutureTask<>(() -> { }, null);
+            Runnable removed = laneTask(ExecutionPriority.BATCH, null);
+            executor.execute(blocker);
+            executor.execute(cancelled);
+            executor.execute(removed);
+
+            assertTrue(executor.remove(removed));
+            cancelled.cancel(false);
+            executor.purge();
+            assertEquals(0, taskQueue.size());
+        } finally {
+            release.countDown();
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void testCancelledLaneStartLeavesQueue() {
+        ScriptScheduler scriptScheduler = new ScriptScheduler("lanes", Executors.defaultThreadFactory());
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            scriptScheduler.getScheduler().schedule(() -> {
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            Disposable start = scriptScheduler.startInLane(ExecutionPriority.NORMAL, null, ScriptMetrics.NOOP).subscribe();
+            assertEquals(1, scriptScheduler.getQueuedTasks());
+
+            start.dispose();
+            assertEquals(0, scriptScheduler.getQueuedTasks());
+        } finally {
+            release.countDown();
+            scriptScheduler.dispose();
+        }
+    }
+
+    private List<Runnable> pollAll() {
+        List<Runnable> tasks = new ArrayList<>();
+        Runnable task;
+        while ((task = taskQueue.poll()) != null) {
+            tasks.add(task);
+        }
+        return tasks;
+    }
+
+    private static Runnable laneTask(ExecutionPriority priority, Object tenant) {
+        return new ScriptTaskQueue.LaneTask(priority, tenant, () -> { }, queueWait -> { });
+    }
+}
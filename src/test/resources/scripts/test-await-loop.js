@@ -0,0 +1,7 @@
+(async function test() {
+    let sum = 0;
+    for (let i = 0; i < 1000; i++) {
+        sum += await value.of(i);
+    }
+    return sum;
+})
@@ -0,0 +1,6 @@
+(function test() {
+    let counter = 0;
+    while (true) {
+        counter++;
+    }
+})
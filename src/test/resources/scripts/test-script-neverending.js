@@ -0,0 +1,3 @@
+(async function test() {
+    return new Promise(() => "Neverending story");
+})